@@ -0,0 +1,175 @@
+package tagextractor;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Finds the sample files used by the benchmarks, and generates synthetic inputs of any size and vocabulary.
+ */
+final class BenchInputs {
+
+    static final long SEED = 42; // keeps synthetic inputs the same from run to run
+
+    /**
+     * Finds a file in the repository, looking in the directory named by the "tagextractor.home" system property, then
+     * the working directory, then its parent (for when the benchmarks are run from the bench directory).
+     * @param path path of the file, relative to the root of the repository
+     * @return the file
+     * @throws IllegalStateException if the file can't be found
+     */
+    static File repoFile(String path) {
+        for (String dir : new String[] {System.getProperty("tagextractor.home"), ".", ".."}) {
+            if (dir == null) continue;
+            File file = new File(dir, path);
+            if (file.isFile()) return file;
+        }
+        throw new IllegalStateException(path + " not found; run from the repository or set -Dtagextractor.home");
+    }
+
+    /**
+     * @param input "dracula", "tag_extractor", or "synthetic"
+     * @param syntheticSize size of the synthetic input, e.g. "256M" or "4G"
+     * @param vocabulary number of distinct words in the synthetic input
+     * @return the file to scan for the given input name
+     */
+    static File input(String input, String syntheticSize, int vocabulary) throws IOException {
+        return switch (input) {
+            case "dracula" -> repoFile("sample/dracula.txt");
+            case "tag_extractor" -> repoFile("sample/tag_extractor.txt");
+            case "synthetic" -> synthetic(parseSize(syntheticSize), vocabulary);
+            default -> throw new IllegalArgumentException("unknown input " + input);
+        };
+    }
+
+    static StopFilter stopFilter() throws FileNotFoundException {
+        return StopFilter.createStopFilter(repoFile("stop/stopwords.txt"));
+    }
+
+    /**
+     * Gets a synthetic text file, generating it the first time. The files are kept in the temporary directory, since
+     * generating several gigabytes takes a while.
+     * @param size size of the file in bytes
+     * @param vocabulary number of distinct words
+     * @return the file
+     */
+    static File synthetic(long size, int vocabulary) throws IOException {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "tagextractor-bench");
+        File file = new File(dir, "synthetic-" + size + "-" + vocabulary + ".txt");
+        if (file.isFile() && file.length() == size) return file;
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("could not create " + dir);
+
+        File partial = new File(dir, file.getName() + ".part");
+        Random random = new Random(SEED);
+        WordSource words = new WordSource(vocabulary, random);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(partial), 1 << 16)) {
+            long written = 0;
+            int column = 0;
+            while (written < size) {
+                byte[] word = words.next();
+                int len = (int) Math.min(word.length, size - written);
+                out.write(word, 0, len);
+                written += len;
+                column += len;
+                if (written == size) break;
+
+                // separates words with spaces, plus the occasional punctuation mark and line break
+                int separator = random.nextInt(20) == 0 ? ',' : column > 70 ? '\n' : ' ';
+                out.write(separator);
+                written++;
+                column = separator == '\n' ? 0 : column + 1;
+            }
+        }
+        if (!partial.renameTo(file)) throw new IOException("could not rename " + partial);
+        return file;
+    }
+
+    /**
+     * Generates a stream of words in memory, for the benchmarks that don't read a file.
+     * @param count number of words
+     * @param vocabulary number of distinct words
+     * @return the words, in lowercase
+     */
+    static List<String> syntheticTokens(int count, int vocabulary) {
+        Random random = new Random(SEED);
+        WordSource words = new WordSource(vocabulary, random);
+        List<String> tokens = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) tokens.add(new String(words.next(), StandardCharsets.US_ASCII));
+        return tokens;
+    }
+
+    /**
+     * Splits a file into words the same way that the scan does.
+     * @param file file to read
+     * @return the words, in lowercase
+     */
+    static List<String> tokens(File file) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            new BlockTokenizer().tokenize(reader, (buf, off, len) -> tokens.add(new String(buf, off, len)));
+        }
+        return tokens;
+    }
+
+    /**
+     * @param size size such as "512K", "256M" or "4G"
+     * @return the size in bytes
+     */
+    static long parseSize(String size) {
+        char unit = Character.toUpperCase(size.charAt(size.length() - 1));
+        int shift = switch (unit) {
+            case 'K' -> 10;
+            case 'M' -> 20;
+            case 'G' -> 30;
+            default -> 0;
+        };
+        return Long.parseLong(shift == 0 ? size : size.substring(0, size.length() - 1)) << shift;
+    }
+
+    /**
+     * Picks words from a made-up vocabulary following Zipf's law, so that a few words are very common and most are
+     * rare, as in natural text. A share of the picks are real stop words, so that stop filtering has work to do.
+     */
+    private static final class WordSource {
+
+        private static final String[] STOP_WORDS = {"the", "and", "of", "to", "a", "in", "that", "it", "was", "he"};
+
+        private final byte[][] vocabulary;
+        private final double[] cumulative; // cumulative probability of each word, for picking by binary search
+        private final Random random;
+
+        WordSource(int size, Random random) {
+            this.random = random;
+            vocabulary = new byte[size][];
+            for (int i = 0; i < size; i++) {
+                byte[] word = new byte[3 + random.nextInt(8)];
+                for (int j = 0; j < word.length; j++) word[j] = (byte) ('a' + random.nextInt(26));
+                vocabulary[i] = word;
+            }
+
+            cumulative = new double[size];
+            double sum = 0;
+            for (int i = 0; i < size; i++) cumulative[i] = sum += 1.0 / (i + 1);
+            for (int i = 0; i < size; i++) cumulative[i] /= sum;
+        }
+
+        byte[] next() {
+            if (random.nextInt(2) == 0) return STOP_WORDS[random.nextInt(STOP_WORDS.length)].getBytes();
+
+            double p = random.nextDouble();
+            int lo = 0, hi = cumulative.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cumulative[mid] < p) lo = mid + 1;
+                else hi = mid;
+            }
+            return vocabulary[lo];
+        }
+    }
+
+    private BenchInputs() {
+
+    }
+}
@@ -0,0 +1,56 @@
+package tagextractor;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures counting, from a tokenizer's words to keyword counts. {@link #tallyWords()} covers what addToWordCount is
+ * called from, including the stop word check, and {@link #incrementTable()} covers the count table on its own. Each
+ * invocation counts every word of the input into a new, empty table.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CountBenchmark {
+
+    @Param({"dracula", "tag_extractor", "synthetic"})
+    String input;
+
+    @Param("1000000")
+    int syntheticWords;
+
+    @Param("100000")
+    int vocabulary;
+
+    StopFilter stopFilter;
+    char[][] words;
+
+    @Setup
+    public void setUp() throws IOException {
+        stopFilter = BenchInputs.stopFilter();
+        List<String> tokens = input.equals("synthetic") ? BenchInputs.syntheticTokens(syntheticWords, vocabulary)
+                : BenchInputs.tokens(BenchInputs.input(input, "0", 0));
+        words = new char[tokens.size()][];
+        for (int i = 0; i < words.length; i++) words[i] = tokens.get(i).toCharArray();
+    }
+
+    @Benchmark
+    public WordTally tallyWords() {
+        WordTally tally = new WordTally(stopFilter);
+        for (char[] word : words) tally.word(word, 0, word.length);
+        return tally;
+    }
+
+    @Benchmark
+    public WordCountTable incrementTable() {
+        WordCountTable table = new WordCountTable();
+        for (char[] word : words) table.increment(word, 0, word.length);
+        return table;
+    }
+}
@@ -0,0 +1,61 @@
+package tagextractor;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what happens after a scan: sorting every keyword into the ranked word list, picking only the top 10, and
+ * formatting the whole list as text for saving.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RankBenchmark {
+
+    @Param({"dracula", "tag_extractor", "synthetic"})
+    String input;
+
+    @Param("5000000")
+    int syntheticWords;
+
+    @Param("1000000")
+    int vocabulary;
+
+    WordCounter wordCounter;
+
+    @Setup
+    public void setUp() throws IOException {
+        WordTally tally = new WordTally(BenchInputs.stopFilter());
+        Iterable<String> tokens = input.equals("synthetic") ? BenchInputs.syntheticTokens(syntheticWords, vocabulary)
+                : BenchInputs.tokens(BenchInputs.input(input, "0", 0));
+        for (String token : tokens) tally.word(token.toCharArray(), 0, token.length());
+        wordCounter = WordCounter.fromTally(tally);
+    }
+
+    @Benchmark
+    public ArrayList<Map.Entry<String, Long>> sortWordList() {
+        return wordCounter.tally.wordMap.rankedList();
+    }
+
+    @Benchmark
+    public ArrayList<Map.Entry<String, Long>> top10() {
+        return wordCounter.tally.wordMap.topK(10);
+    }
+
+    @Benchmark
+    public void keywordsAsText() throws IOException {
+        wordCounter.wordList = null; // makes each invocation sort the list again, as a fresh scan would
+        BufferedWriter writer = new BufferedWriter(Writer.nullWriter());
+        wordCounter.writeFile(writer);
+        writer.flush();
+    }
+}
@@ -0,0 +1,47 @@
+package tagextractor;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a whole scan of a file, the work done by the WordCounter constructor, with each scan engine.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScanBenchmark {
+
+    @Param({"dracula", "tag_extractor", "synthetic"})
+    String input;
+
+    @Param({"CHARACTER", "BLOCK", "MAPPED", "PARALLEL", "PIPELINED"})
+    String mode;
+
+    @Param("256M")
+    String syntheticSize;
+
+    @Param("100000")
+    int vocabulary;
+
+    File target;
+    StopFilter stopFilter;
+    ScanOptions options;
+
+    @Setup
+    public void setUp() throws IOException {
+        target = BenchInputs.input(input, syntheticSize, vocabulary);
+        stopFilter = BenchInputs.stopFilter();
+        options = new ScanOptions().scanMode(WordCounter.ScanMode.valueOf(mode));
+    }
+
+    @Benchmark
+    public WordCounter scan() throws IOException {
+        return WordCounter.scan(target, stopFilter, options, new ScanProgress());
+    }
+}
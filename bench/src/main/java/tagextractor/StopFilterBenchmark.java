@@ -0,0 +1,57 @@
+package tagextractor;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures stop word lookups, both straight from a character buffer as the scan does them and through a
+ * CharSequence. Each invocation looks up every word of the input once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StopFilterBenchmark {
+
+    @Param({"dracula", "tag_extractor", "synthetic"})
+    String input;
+
+    @Param("1000000")
+    int syntheticWords;
+
+    @Param("100000")
+    int vocabulary;
+
+    StopFilter stopFilter;
+    char[][] words;
+    StringBuilder[] builders;
+
+    @Setup
+    public void setUp() throws IOException {
+        stopFilter = BenchInputs.stopFilter();
+        List<String> tokens = input.equals("synthetic") ? BenchInputs.syntheticTokens(syntheticWords, vocabulary)
+                : BenchInputs.tokens(BenchInputs.input(input, "0", 0));
+        words = new char[tokens.size()][];
+        builders = new StringBuilder[tokens.size()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = tokens.get(i).toCharArray();
+            builders[i] = new StringBuilder(tokens.get(i));
+        }
+    }
+
+    @Benchmark
+    public void isKeyWordSlice(Blackhole blackhole) {
+        for (char[] word : words) blackhole.consume(stopFilter.isKeyWord(word, 0, word.length));
+    }
+
+    @Benchmark
+    public void isKeyWordCharSequence(Blackhole blackhole) {
+        for (StringBuilder word : builders) blackhole.consume(stopFilter.isKeyWord(word));
+    }
+}
@@ -0,0 +1,60 @@
+package tagextractor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the batch mode writes keywords in UTF-8, whatever the platform's default charset is.
+ */
+class BatchMainTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    void fileExportIsUtf8() throws IOException {
+        File output = new File(directory, "out.csv");
+        assertEquals(0, BatchMain.run(new String[] {"--stop", stopFile().getPath(), "-f", "csv", "-o",
+                output.getPath(), target().getPath()}));
+        String csv = Files.readString(output.toPath(), StandardCharsets.UTF_8);
+        assertTrue(csv.contains("café,3"), csv);
+        assertTrue(csv.contains("naïve,1"), csv);
+    }
+
+    @Test
+    void standardOutputExportIsUtf8() throws IOException {
+        PrintStream out = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        try {
+            assertEquals(0, BatchMain.run(new String[] {"--stop", stopFile().getPath(), "-f", "json",
+                    target().getPath()}));
+        } finally {
+            System.setOut(out);
+        }
+        String json = bytes.toString(StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"keyword\":\"café\""), json);
+    }
+
+    /**
+     * @return a UTF-8 file whose keywords include letters outside ASCII
+     */
+    private File target() throws IOException {
+        File target = new File(directory, "text.txt");
+        Files.writeString(target.toPath(), "Café, café and the CAFÉ of a naïve cook.\n", StandardCharsets.UTF_8);
+        return target;
+    }
+
+    private File stopFile() throws IOException {
+        File stop = new File(directory, "stop.txt");
+        Files.writeString(stop.toPath(), "a\nand\nof\nthe\n", StandardCharsets.US_ASCII);
+        return stop;
+    }
+}
@@ -0,0 +1,52 @@
+package tagextractor;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that text folded for the keyword filter matches the keywords a scan folded from the same text, whatever the
+ * default locale is.
+ */
+class CaseFoldingTest {
+
+    static final String[] QUERIES = {"ΣΊΣΥΦΟΣ", "INDEX", "İSTANBUL", "Straße"};
+
+    @TempDir
+    File directory;
+
+    @ParameterizedTest
+    @EnumSource(BlockTokenizer.CaseFolding.class)
+    void foldedTextMatchesTheScannedKeywords(BlockTokenizer.CaseFolding folding) throws IOException {
+        File target = new File(directory, "text.txt");
+        Files.writeString(target.toPath(), String.join(" ", QUERIES) + "\n", StandardCharsets.UTF_8);
+        File stop = new File(directory, "stop.txt");
+        Files.writeString(stop.toPath(), "the\n", StandardCharsets.US_ASCII);
+        WordCounter counter = WordCounter.createWordCounter(target, StopFilter.createStopFilter(stop),
+                new ScanOptions().caseFolding(folding), new ScanProgress());
+        Set<String> keywords = new HashSet<>();
+        for (Map.Entry<String, Long> entry : counter.getWordList()) keywords.add(entry.getKey());
+
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(Locale.forLanguageTag("tr-TR"));
+        try {
+            for (String query : QUERIES) {
+                String folded = folding.fold(query);
+                assertTrue(keywords.contains(folded), folded + " not in " + keywords);
+            }
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+}
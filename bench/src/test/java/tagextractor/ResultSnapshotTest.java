@@ -0,0 +1,106 @@
+package tagextractor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that snapshots load back the counts they were written with, and that corrupt keyword lengths are reported as
+ * an IOException rather than failing somewhere inside the reader.
+ */
+class ResultSnapshotTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    void snapshotLoadsTheCountsItWasWrittenWith() throws IOException {
+        File target = new File(directory, "text.txt");
+        Files.writeString(target.toPath(), "alpha alphabet alpha beta the\n", StandardCharsets.US_ASCII);
+        File stop = new File(directory, "stop.txt");
+        Files.writeString(stop.toPath(), "the\n", StandardCharsets.US_ASCII);
+        WordCounter counter = WordCounter.createWordCounter(target, StopFilter.createStopFilter(stop),
+                new ScanOptions(), new ScanProgress());
+        File snapshot = new File(directory, "text." + ResultSnapshot.EXTENSION);
+        ResultSnapshot.write(counter, snapshot);
+
+        WordTally tally = ResultSnapshot.read(snapshot);
+        assertEquals(2, tally.wordMap.get("alpha"));
+        assertEquals(1, tally.wordMap.get("alphabet"));
+        assertEquals(1, tally.wordMap.get("beta"));
+        assertEquals(counter.tally.totalStopWords, tally.totalStopWords);
+    }
+
+    @Test
+    void sharedPrefixLongerThanTheKeywordBeforeIsCorrupt() throws IOException {
+        assertCorrupt(keyword(0, "ab"), keyword(3, "c"));
+    }
+
+    @Test
+    void suffixPastTheEndOfTheFileIsCorrupt() throws IOException {
+        assertCorrupt(keyword(0, "ab"), varint(0), varint(Integer.MAX_VALUE));
+    }
+
+    @Test
+    void lengthsThatOverflowAreCorrupt() throws IOException {
+        assertCorrupt(keyword(0, "ab"), varint(2), varint(Integer.MAX_VALUE - 1));
+    }
+
+    @Test
+    void negativeLengthsAreCorrupt() throws IOException {
+        assertCorrupt(keyword(0, "ab"), varint(-1), varint(1));
+    }
+
+    /**
+     * Writes a snapshot holding the given keywords after a valid header, and checks that reading it fails.
+     * @param keywords encoded keywords, ending with the corrupt one
+     */
+    private void assertCorrupt(byte[]... keywords) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ByteBuffer header = ByteBuffer.allocate(48);
+        header.putInt(ResultSnapshot.MAGIC).putInt(ResultSnapshot.VERSION);
+        header.putLong(10).putLong(2).putLong(2).putLong(0).putInt(8).putInt(keywords.length);
+        bytes.write(header.array(), 0, header.position());
+        for (byte[] keyword : keywords) bytes.write(keyword);
+        bytes.write(new byte[16]); // padding, so that the reader doesn't simply run out of bytes
+        File snapshot = new File(directory, "corrupt." + ResultSnapshot.EXTENSION);
+        Files.write(snapshot.toPath(), bytes.toByteArray());
+
+        IOException e = assertThrows(IOException.class, () -> ResultSnapshot.read(snapshot));
+        assertEquals("corrupt snapshot: " + snapshot, e.getMessage());
+    }
+
+    /**
+     * @return a keyword encoded the way a snapshot stores it, with a count of 1
+     */
+    private static byte[] keyword(int shared, String suffix) {
+        byte[] rest = suffix.getBytes(StandardCharsets.UTF_8);
+        byte[] start = varint(shared), length = varint(rest.length);
+        byte[] keyword = Arrays.copyOf(start, start.length + length.length + rest.length + 1);
+        System.arraycopy(length, 0, keyword, start.length, length.length);
+        System.arraycopy(rest, 0, keyword, start.length + length.length, rest.length);
+        keyword[keyword.length - 1] = 1;
+        return keyword;
+    }
+
+    /**
+     * @return the bytes of a varint, in the same layout as ResultSnapshot writes them
+     */
+    private static byte[] varint(int value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        while ((value & ~0x7F) != 0) {
+            bytes.write(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        bytes.write(value);
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,112 @@
+package tagextractor;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a rescan picking up from a checkpoint gives the same results as scanning the file from the start.
+ */
+class ScanCheckpointTest {
+
+    static final int LINES = 60_000; // enough lines for a PARALLEL scan to hand the middle of the file to other threads
+    static final String LINE = "alpha bravo charlie\n";
+
+    @TempDir
+    File directory;
+
+    @ParameterizedTest
+    @EnumSource(value = WordCounter.ScanMode.class, names = {"MAPPED", "PARALLEL"})
+    void appendedFileIsPickedUp(WordCounter.ScanMode mode) throws IOException {
+        File target = new File(directory, "grows.txt");
+        Files.writeString(target.toPath(), LINE.repeat(LINES), StandardCharsets.US_ASCII);
+        scan(target, mode, true);
+
+        Files.writeString(target.toPath(), "delta echo\n".repeat(100), StandardCharsets.US_ASCII,
+                StandardOpenOption.APPEND);
+        Map<String, Long> resumed = scan(target, mode, true);
+        assertEquals(scan(target, mode, false), resumed);
+        assertEquals(LINES, resumed.get("alpha"));
+        assertEquals(100, resumed.get("delta"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = WordCounter.ScanMode.class, names = {"MAPPED", "PARALLEL"})
+    void editInTheMiddleIsNotPickedUp(WordCounter.ScanMode mode) throws IOException {
+        File target = new File(directory, "edited.txt");
+        Files.writeString(target.toPath(), LINE.repeat(LINES), StandardCharsets.US_ASCII);
+        scan(target, mode, true);
+
+        // replaces "alpha" on a thousand lines far from both ends, keeping the size, then appends to the file
+        try (RandomAccessFile file = new RandomAccessFile(target, "rw")) {
+            for (int line = LINES / 2; line < LINES / 2 + 1000; line++) {
+                file.seek((long) line * LINE.length());
+                file.write("delta".getBytes(StandardCharsets.US_ASCII));
+            }
+            file.seek(file.length());
+            file.write(LINE.getBytes(StandardCharsets.US_ASCII));
+        }
+        Map<String, Long> rescanned = scan(target, mode, true);
+        assertEquals(scan(target, mode, false), rescanned);
+        assertEquals(LINES + 1 - 1000, rescanned.get("alpha"));
+        assertEquals(1000, rescanned.get("delta"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = WordCounter.ScanMode.class, names = {"MAPPED", "PARALLEL"})
+    void editKeepingTheSizeIsNotPickedUp(WordCounter.ScanMode mode) throws IOException {
+        File target = new File(directory, "rewritten.txt");
+        Files.writeString(target.toPath(), LINE.repeat(LINES), StandardCharsets.US_ASCII);
+        long modified = target.lastModified();
+        scan(target, mode, true);
+
+        try (RandomAccessFile file = new RandomAccessFile(target, "rw")) {
+            file.seek((long) LINES / 2 * LINE.length());
+            file.write("delta".getBytes(StandardCharsets.US_ASCII));
+        }
+        // makes sure the time has moved on, however coarse the file system's clock is
+        assertTrue(target.setLastModified(modified + 2000));
+        Map<String, Long> rescanned = scan(target, mode, true);
+        assertEquals(LINES - 1, rescanned.get("alpha"));
+        assertEquals(1, rescanned.get("delta"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = WordCounter.ScanMode.class, names = {"MAPPED", "PARALLEL"})
+    void unchangedFileGivesTheSameCounts(WordCounter.ScanMode mode) throws IOException {
+        File target = new File(directory, "unchanged.txt");
+        Files.writeString(target.toPath(), LINE.repeat(LINES), StandardCharsets.US_ASCII);
+        Map<String, Long> first = scan(target, mode, true);
+        assertEquals(first, scan(target, mode, true));
+        assertEquals(LINES, first.get("alpha"));
+    }
+
+    /**
+     * @param target file to scan
+     * @param mode engine to scan with
+     * @param checkpoints whether to pick up from and save checkpoints in the test's directory
+     * @return the count of every keyword
+     */
+    private Map<String, Long> scan(File target, WordCounter.ScanMode mode, boolean checkpoints)
+            throws IOException {
+        File stop = new File(directory, "stop.txt");
+        if (!stop.isFile()) Files.writeString(stop.toPath(), "the\n", StandardCharsets.US_ASCII);
+        ScanOptions options = new ScanOptions().scanMode(mode).threads(2)
+                .checkpointDirectory(checkpoints ? new File(directory, "checkpoints") : null);
+        WordCounter counter = WordCounter.createWordCounter(target, StopFilter.createStopFilter(stop), options,
+                new ScanProgress());
+        Map<String, Long> counts = new HashMap<>();
+        for (Map.Entry<String, Long> entry : counter.getWordList()) counts.put(entry.getKey(), entry.getValue());
+        return counts;
+    }
+}
@@ -0,0 +1,88 @@
+package tagextractor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that compiled stop word files load the same words they were compiled from, and that a corrupt table is
+ * rejected while loading rather than failing partway through a scan.
+ */
+class StopFilterTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    void compiledFileHoldsTheSameWords() throws IOException {
+        StopFilter filter = StopFilter.createStopFilter(compiled());
+        assertFalse(filter.isKeyWord("the"));
+        assertFalse(filter.isKeyWord("and"));
+        assertTrue(filter.isKeyWord("vampire"));
+    }
+
+    @Test
+    void slotPastTheLastWordIsCorrupt() throws IOException {
+        File compiled = compiled();
+        try (RandomAccessFile file = new RandomAccessFile(compiled, "rw")) {
+            int capacity = header(file, 36);
+            // replaces the first word found among the slots with an index past the end of the words
+            for (int slot = 0; slot < capacity; slot++) {
+                file.seek(StopFilter.HEADER_SIZE + (long) (capacity + slot) * Integer.BYTES);
+                if (file.readInt() != 0) {
+                    file.seek(file.getFilePointer() - Integer.BYTES);
+                    file.writeInt(header(file, 32) + 5);
+                    break;
+                }
+            }
+        }
+        assertCorrupt(compiled);
+    }
+
+    @Test
+    void wordStartsGoingBackwardsAreCorrupt() throws IOException {
+        File compiled = compiled();
+        try (RandomAccessFile file = new RandomAccessFile(compiled, "rw")) {
+            int capacity = header(file, 36);
+            // moves the start of the second word back before the start of the first
+            file.seek(StopFilter.HEADER_SIZE + (long) (capacity * 2 + 1) * Integer.BYTES);
+            file.writeInt(-1);
+        }
+        assertCorrupt(compiled);
+    }
+
+    /**
+     * @return a compiled stop word file of a few words, written to the test's directory
+     */
+    private File compiled() throws IOException {
+        File text = new File(directory, "stop.txt");
+        Files.writeString(text.toPath(), "the\nand\nof\n", StandardCharsets.US_ASCII);
+        File compiled = new File(directory, "stop." + StopFilter.EXTENSION);
+        StopFilter.createStopFilter(text).save(compiled);
+        return compiled;
+    }
+
+    /**
+     * @return the int at the given position of the header
+     */
+    private static int header(RandomAccessFile file, int position) throws IOException {
+        long pointer = file.getFilePointer();
+        file.seek(position);
+        int value = file.readInt();
+        file.seek(pointer);
+        return value;
+    }
+
+    private static void assertCorrupt(File compiled) {
+        RuntimeException e = assertThrows(RuntimeException.class, () -> StopFilter.createStopFilter(compiled));
+        assertInstanceOf(IOException.class, e.getCause());
+        assertEquals("corrupt stop word file: " + compiled, e.getCause().getMessage());
+    }
+}
@@ -0,0 +1,47 @@
+package tagextractor;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.FileNotFoundException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that every engine gives exactly the counts that the original engine gave for sample/dracula.txt, both in
+ * its totals and in the count of every keyword.
+ */
+class WordCounterTest {
+
+    // totals of the original engine for Dracula, without its copyright header, decoding the file as UTF-8
+    static final long CHARACTERS = 863_290, WORDS = 166_228, KEYWORDS = 46_580, STOP_WORDS = 119_648;
+
+    static WordCounter original; // Dracula as scanned by the original engine, one character at a time
+
+    @BeforeAll
+    static void scanWithTheOriginalEngine() throws FileNotFoundException {
+        original = scan(WordCounter.ScanMode.CHARACTER);
+    }
+
+    @ParameterizedTest
+    @EnumSource(WordCounter.ScanMode.class)
+    void draculaCountsMatchTheOriginalEngine(WordCounter.ScanMode mode) throws FileNotFoundException {
+        WordCounter counter = scan(mode);
+        assertEquals(CHARACTERS, counter.getTotalChars());
+        assertEquals(WORDS, counter.getTotalWords());
+        assertEquals(KEYWORDS, counter.getTotalKeywords());
+        assertEquals(STOP_WORDS, counter.getTotalStopWords());
+        assertEquals(original.getWordList(), counter.getWordList());
+    }
+
+    /**
+     * @param mode engine to scan with
+     * @return the results of scanning Dracula with the default stop words
+     */
+    private static WordCounter scan(WordCounter.ScanMode mode) throws FileNotFoundException {
+        return WordCounter.createWordCounter(WordCounter.DRACULA,
+                StopFilter.createStopFilter(StopFilter.DEFAULT_STOP_WORDS), new ScanOptions().scanMode(mode).threads(4),
+                new ScanProgress());
+    }
+}
@@ -0,0 +1,459 @@
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Command-line entry point for scanning files on machines without a display. Only uses {@link WordCounter} and
+ * {@link StopFilter}, so AWT and Swing are never initialized and no fonts or images are loaded.
+ */
+public final class BatchMain {
+
+    static final String USAGE = """
+            Usage: java BatchMain [options] <file, directory or glob>...
+
+            Scans each file for keywords and writes the keywords and their counts. When there are several files, they
+            are scanned at the same time, and the combined counts of every file are written as well. With --phrases,
+            phrases of several keywords in a row are written instead. With --index, each file's keywords are ranked
+            by TF-IDF, so that keywords common to most documents of a corpus rank below the ones that set the file
+            apart.
+
+            Options:
+              -s, --stop <file>       file of stop words (default: stop/stopwords.txt)
+              -o, --output <path>     file to write to, or a directory to write one file per input into
+                                      (default: standard output)
+              -f, --format <format>   output format: text, csv, tsv, json (one object per line), or snapshot
+                                      for a binary file that the GUI can open again; snapshots need --output
+                                      (default: text)
+              -t, --threads <n>       number of threads to scan with; for a single file, implies --mode PARALLEL
+              --shared-counts         count every chunk of a PARALLEL scan into one shared table, which needs
+                                      less memory for files with huge vocabularies
+              -m, --mode <mode>       scan engine: CHARACTER, BLOCK, MAPPED, PARALLEL or PIPELINED (default: BLOCK,
+                                      except that large files of several are split into chunks with PARALLEL)
+              -e, --encoding <name>   charset of the files to scan (default: detected from each file; UTF-8 or
+                                      UTF-16 if it starts with a byte order mark, otherwise UTF-8 if it is
+                                      valid UTF-8, and ISO-8859-1 if not)
+              --case <folding>        how letters are folded: LOWER, or FOLD to also match letters with several
+                                      lowercase forms, such as the two Greek sigmas (default: LOWER)
+              --normalize <form>      put words into a Unicode normalization form: NFC, NFD, NFKC or NFKD
+                                      (default: none)
+              --stem <stemmer>        count keywords by their stem, so that forms of the same word such as
+                                      "vampire" and "vampires" count as one: PORTER for English (default: none)
+              -p, --phrases <n>       count phrases of 2 to n keywords with no stop word between them, and
+                                      write those instead of single keywords; turns off --checkpoints and --cache
+              --max-phrases <n>       phrases kept per file or chunk before the least frequent are pruned, after
+                                      which the counts of phrases that come back are estimates (default: 262144)
+              -i, --index <file>      rank the keywords of each file by TF-IDF, using the document frequencies
+                                      in this index file, and write their scores after their counts
+              --update-index          add every file scanned to the --index file before ranking, creating it if
+                                      it doesn't exist; a file added twice is counted as two documents
+              -c, --checkpoints <dir> keep checkpoints in this directory, so that scanning a file again only
+                                      scans what was appended to it since the last scan
+              --compile-stop <file>   compile the stop word file into a binary file that loads without parsing,
+                                      and that can be passed to --stop in its place
+              --cache <dir>           keep the results of each scan in this directory, and reuse them when a
+                                      file with the same contents is scanned again
+              --cache-size <MB>       limit on the size of the cache, in megabytes (default: 256)
+              -h, --help              show this message
+            """;
+
+    public static void main(String[] args) {
+        try {
+            System.exit(run(args));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.print(USAGE);
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Parses the arguments and scans every file they name.
+     * @param args command-line arguments
+     * @return exit status, which is 0 if every file was scanned
+     * @throws IllegalArgumentException if the arguments are invalid
+     */
+    static int run(String[] args) {
+        File stopFile = StopFilter.DEFAULT_STOP_WORDS, output = null;
+        ScanOptions options = new ScanOptions();
+        KeywordExporter.Format format = KeywordExporter.Format.TEXT; // format to write in, unless snapshot is set
+        File cacheDirectory = null, compiledStop = null, indexFile = null;
+        long cacheSize = ResultCache.DEFAULT_MAX_BYTES;
+        boolean modeGiven = false, snapshot = false, updateIndex = false;
+        List<String> patterns = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-s", "--stop" -> stopFile = new File(value(args, ++i, arg));
+                case "-o", "--output" -> output = new File(value(args, ++i, arg));
+                case "-f", "--format" -> {
+                    String name = value(args, ++i, arg);
+                    snapshot = name.equalsIgnoreCase("snapshot");
+                    if (!snapshot) {
+                        try {
+                            format = KeywordExporter.Format.valueOf(name.toUpperCase());
+                        } catch (IllegalArgumentException e) {
+                            throw new IllegalArgumentException("unknown format " + name);
+                        }
+                    }
+                }
+                case "-t", "--threads" -> {
+                    try {
+                        options.threads(Integer.parseInt(value(args, ++i, arg)));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("invalid thread count " + args[i]);
+                    }
+                    if (!modeGiven) options.scanMode(WordCounter.ScanMode.PARALLEL);
+                }
+                case "--shared-counts" -> options.sharedCounts(true);
+                case "-m", "--mode" -> {
+                    String mode = value(args, ++i, arg);
+                    try {
+                        options.scanMode(WordCounter.ScanMode.valueOf(mode.toUpperCase()));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("unknown scan mode " + mode);
+                    }
+                    modeGiven = true;
+                }
+                case "-e", "--encoding" -> {
+                    String name = value(args, ++i, arg);
+                    try {
+                        options.charset(Charset.forName(name));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("unknown charset " + name);
+                    }
+                }
+                case "--case" -> {
+                    String folding = value(args, ++i, arg);
+                    try {
+                        options.caseFolding(BlockTokenizer.CaseFolding.valueOf(folding.toUpperCase()));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("unknown case folding " + folding);
+                    }
+                }
+                case "--normalize" -> {
+                    String form = value(args, ++i, arg);
+                    try {
+                        options.normalization(Normalizer.Form.valueOf(form.toUpperCase()));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("unknown normalization form " + form);
+                    }
+                }
+                case "--stem" -> {
+                    String stemmer = value(args, ++i, arg);
+                    if (!stemmer.equalsIgnoreCase("porter"))
+                        throw new IllegalArgumentException("unknown stemmer " + stemmer);
+                    options.stemmer(new PorterStemmer());
+                }
+                case "-p", "--phrases" -> {
+                    try {
+                        options.phrases(Integer.parseInt(value(args, ++i, arg)));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("invalid phrase length " + args[i]);
+                    }
+                }
+                case "--max-phrases" -> {
+                    try {
+                        options.maxPhrases(Integer.parseInt(value(args, ++i, arg)));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("invalid phrase limit " + args[i]);
+                    }
+                }
+                case "-i", "--index" -> indexFile = new File(value(args, ++i, arg));
+                case "--update-index" -> updateIndex = true;
+                case "-c", "--checkpoints" -> options.checkpointDirectory(new File(value(args, ++i, arg)));
+                case "--compile-stop" -> compiledStop = new File(value(args, ++i, arg));
+                case "--cache" -> cacheDirectory = new File(value(args, ++i, arg));
+                case "--cache-size" -> {
+                    try {
+                        cacheSize = Long.parseLong(value(args, ++i, arg)) << 20;
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("invalid cache size " + args[i]);
+                    }
+                    if (cacheSize < 0) throw new IllegalArgumentException("invalid cache size " + args[i]);
+                }
+                case "-h", "--help" -> {
+                    System.out.print(USAGE);
+                    return 0;
+                }
+                default -> {
+                    if (arg.startsWith("-")) throw new IllegalArgumentException("unknown option " + arg);
+                    patterns.add(arg);
+                }
+            }
+        }
+        if (patterns.isEmpty() && compiledStop == null) throw new IllegalArgumentException("no files to scan");
+        if (cacheDirectory != null) options.resultCache(ResultCache.createResultCache(cacheDirectory, cacheSize));
+        if (snapshot && output == null)
+            throw new IllegalArgumentException("snapshots can't be written to standard output");
+        if (snapshot && options.phraseLength > 0) throw new IllegalArgumentException("snapshots can't hold phrases");
+        if (updateIndex && indexFile == null) throw new IllegalArgumentException("--update-index needs --index");
+        if (indexFile != null && snapshot) throw new IllegalArgumentException("snapshots can't hold TF-IDF scores");
+        if (indexFile != null && options.phraseLength > 0)
+            throw new IllegalArgumentException("phrases can't be ranked by TF-IDF");
+        if (indexFile != null && !updateIndex && !indexFile.isFile()) {
+            System.err.println("Error: index file not found: " + indexFile);
+            return 1;
+        }
+
+        StopFilter stopFilter;
+        try {
+            stopFilter = StopFilter.createStopFilter(stopFile);
+        } catch (FileNotFoundException e) {
+            System.err.println("Error: stop word file not found: " + stopFile);
+            return 1;
+        }
+
+        if (compiledStop != null) {
+            try {
+                stopFilter.save(compiledStop);
+            } catch (IOException e) {
+                System.err.println("Error: could not write " + compiledStop + ": " + e.getMessage());
+                return 1;
+            }
+            System.err.printf("%s: compiled %d stop words into %s%n", stopFile, stopFilter.size(), compiledStop);
+            if (patterns.isEmpty()) return 0;
+        }
+
+        LinkedHashSet<File> matches = new LinkedHashSet<>(); // keeps a file named twice from being scanned twice
+        for (String pattern : patterns) matches.addAll(expand(pattern));
+        List<File> targets = new ArrayList<>(matches);
+        if (targets.isEmpty()) {
+            System.err.println("Error: no files match " + String.join(" ", patterns));
+            return 1;
+        }
+
+        // writes into a directory if there are several inputs, or if the output path is already a directory
+        boolean toDirectory = output != null && (targets.size() > 1 || output.isDirectory());
+        // added to the names of files written into a directory
+        String suffix = snapshot ? "." + ResultSnapshot.EXTENSION : ".tags." + format.extension;
+        if (toDirectory && !output.isDirectory() && !output.mkdirs()) {
+            System.err.println("Error: could not create directory " + output);
+            return 1;
+        }
+
+        if (targets.size() == 1) {
+            File target = targets.get(0);
+            long start = System.nanoTime();
+            try {
+                WordCounter wordCounter = WordCounter.createWordCounter(target, stopFilter, options,
+                        new ScanProgress());
+                printStats(target.toString(), wordCounter, start);
+                DocumentFrequencyIndex index = null;
+                if (indexFile != null) {
+                    index = openIndex(indexFile, updateIndex ? List.of(wordCounter) : List.of());
+                    if (index == null) return 1;
+                }
+                return write(wordCounter, null, toDirectory ? new File(output, target.getName() + suffix)
+                        : output, snapshot, format, index) ? 0 : 1;
+            } catch (FileNotFoundException e) {
+                System.err.println("Error: file not found: " + target);
+                return 1;
+            }
+        }
+
+        // several files are scanned together as a corpus, skipping any that don't exist
+        int status = 0;
+        List<File> existing = new ArrayList<>();
+        for (File target : targets) {
+            if (target.isFile()) existing.add(target);
+            else {
+                System.err.println("Error: file not found: " + target);
+                status = 1;
+            }
+        }
+
+        long start = System.nanoTime();
+        CorpusScanner corpus;
+        try {
+            corpus = CorpusScanner.createCorpusScanner(existing, stopFilter, options, new ScanProgress());
+        } catch (FileNotFoundException e) {
+            System.err.println("Error: file not found: " + e.getMessage());
+            return 1;
+        }
+
+        DocumentFrequencyIndex index = null;
+        if (indexFile != null) {
+            index = openIndex(indexFile, updateIndex ? corpus.getFileCounters().values() : List.of());
+            if (index == null) return 1;
+        }
+
+        Set<String> usedNames = new HashSet<>(); // for keeping files with the same name from overwriting each other
+        for (Map.Entry<File, WordCounter> entry : corpus.getFileCounters().entrySet()) {
+            File target = entry.getKey();
+            printStats(target.toString(), entry.getValue(), -1);
+
+            File data = null;
+            if (toDirectory) {
+                String name = target.getName() + suffix;
+                for (int i = 2; !usedNames.add(name); i++) name = target.getName() + "." + i + suffix;
+                data = new File(output, name);
+            }
+            if (!write(entry.getValue(), target.toString(), data, snapshot, format, index)) status = 1;
+        }
+        // the corpus as a whole isn't a document of the index, so its keywords are always ranked by count
+        printStats("corpus of " + existing.size() + " files", corpus.getCorpusCounter(), start);
+        if (!write(corpus.getCorpusCounter(), "corpus", toDirectory ? new File(output, "corpus" + suffix) : null,
+                snapshot, format, null)) status = 1;
+        return status;
+    }
+
+    /**
+     * Prints the totals of a scan to standard error.
+     * @param label name of what was scanned
+     * @param wordCounter results of the scan
+     * @param start value of {@link System#nanoTime()} when the scan started, or -1 to leave out the time taken
+     */
+    private static void printStats(String label, WordCounter wordCounter, long start) {
+        PhraseTally phrases = wordCounter.tally.phrases;
+        System.err.printf("%s: %d characters, %d words, %d keywords, %d stop words%s%s%n", label,
+                wordCounter.getTotalChars(), wordCounter.getTotalWords(), wordCounter.getTotalKeywords(),
+                wordCounter.getTotalStopWords(),
+                phrases == null ? "" : ", " + phrases.table.size() + " phrases"
+                        + (phrases.isPruned() ? " (rarest pruned, some counts estimated)" : ""),
+                start == -1 ? "" : " (" + (System.nanoTime() - start) / 1_000_000 + " ms)");
+    }
+
+    /**
+     * Adds documents to an index file, if there are any to add, then opens it.
+     * @param indexFile index file to open
+     * @param documents results of scanning the documents to add, which may be empty
+     * @return the index, or null if it couldn't be updated or read
+     */
+    private static DocumentFrequencyIndex openIndex(File indexFile, Collection<WordCounter> documents) {
+        try {
+            if (documents.isEmpty()) return DocumentFrequencyIndex.open(indexFile);
+            DocumentFrequencyIndex index = DocumentFrequencyIndex.addDocuments(indexFile, documents);
+            System.err.printf("%s: added %d documents, now %d documents and %d keywords%n", indexFile,
+                    documents.size(), index.getDocumentCount(), index.size());
+            return index;
+        } catch (IOException e) {
+            System.err.println("Error: could not " + (documents.isEmpty() ? "read " : "update ") + indexFile + ": "
+                    + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the keywords and counts of a scan, either to a file or to standard output. If the scan counted phrases,
+     * the phrases are written instead.
+     * @param wordCounter results of the scan
+     * @param header heading to write before the results on standard output, or null for none
+     * @param data file to write to, or null to write to standard output
+     * @param snapshot whether to write a binary snapshot rather than text, which needs a file to write to
+     * @param format format to write in, if not writing a snapshot
+     * @param index document frequencies to rank the keywords by TF-IDF with, or null to rank them by count
+     * @return true if the results were written
+     */
+    private static boolean write(WordCounter wordCounter, String header, File data, boolean snapshot,
+                                 KeywordExporter.Format format, DocumentFrequencyIndex index) {
+        try {
+            if (snapshot) wordCounter.writeSnapshot(data);
+            else if (data == null) {
+                Writer writer = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+                if (header != null) writer.write("== " + header + " ==" + System.lineSeparator());
+                export(wordCounter, writer, format, index);
+                // ends the text table's last line, which the other formats already do
+                if (format == KeywordExporter.Format.TEXT) writer.write(System.lineSeparator());
+                writer.flush();
+            } else {
+                try (Writer writer = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(data)),
+                        StandardCharsets.UTF_8)) {
+                    export(wordCounter, writer, format, index);
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error: could not write " + (data == null ? "results" : data) + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Writes the phrases of a scan if it counted them, its keywords ranked by TF-IDF if there is an index, and its
+     * keywords ranked by count otherwise.
+     */
+    private static void export(WordCounter wordCounter, Writer writer, KeywordExporter.Format format,
+                               DocumentFrequencyIndex index) throws IOException {
+        if (wordCounter.tally.phrases != null) KeywordExporter.exportPhrases(wordCounter, writer, format);
+        else if (index != null) KeywordExporter.exportTfIdf(wordCounter, index, writer, format);
+        else KeywordExporter.export(wordCounter, writer, format);
+    }
+
+    /**
+     * Turns a command-line argument into the files it names. Arguments without any glob characters name either a
+     * single file, or a directory whose files are all scanned. Otherwise, the directory before the first glob
+     * character is searched for paths matching the glob, going into subdirectories only as deep as the glob does (or
+     * all the way down if it contains "**").
+     * @param pattern file path or glob
+     * @return every regular file matching the pattern, in sorted order
+     */
+    static List<File> expand(String pattern) {
+        int wildcard = indexOfWildcard(pattern);
+        if (wildcard == -1) {
+            File file = new File(pattern);
+            if (!file.isDirectory()) return List.of(file);
+            pattern = pattern + File.separator + "**"; // a directory stands for every file inside of it
+            wildcard = pattern.length() - 2;
+        }
+
+        String separators = File.separatorChar == '/' ? "/" : "/" + File.separatorChar;
+        int baseEnd = -1;
+        for (int i = 0; i < wildcard; i++) {
+            if (separators.indexOf(pattern.charAt(i)) != -1) baseEnd = i;
+        }
+        boolean relative = baseEnd == -1; // whether the glob starts in the working directory
+        Path base = Paths.get(relative ? "." : pattern.substring(0, baseEnd + 1));
+        String rest = pattern.substring(baseEnd + 1);
+
+        int depth = Integer.MAX_VALUE;
+        if (!rest.contains("**")) {
+            depth = 1;
+            for (char c : rest.toCharArray()) if (separators.indexOf(c) != -1) depth++;
+        }
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + rest);
+        try (Stream<Path> paths = Files.walk(base, depth)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(path -> matcher.matches(base.relativize(path)))
+                    .map(path -> relative ? base.relativize(path) : path)
+                    .sorted()
+                    .map(Path::toFile)
+                    .toList();
+        } catch (NoSuchFileException e) {
+            return List.of();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the index of the first glob character in the pattern, or -1 if there is none
+     */
+    private static int indexOfWildcard(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if ("*?[{".indexOf(pattern.charAt(i)) != -1) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the value following an option
+     * @throws IllegalArgumentException if the option is the last argument
+     */
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) throw new IllegalArgumentException("missing value for " + option);
+        return args[i];
+    }
+
+    /**
+     * Private constructor
+     */
+    private BatchMain() {
+
+    }
+}
@@ -0,0 +1,419 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.text.Normalizer;
+import java.util.Arrays;
+
+/**
+ * Tokenizer that reads its input in large blocks and scans each block in a single tight loop. Characters in the Basic
+ * Multilingual Plane are classified and folded with a lookup table, and only surrogates and characters that may be
+ * combining marks go through {@link Character}. Besides characters, it can also scan bytes in ASCII, ISO-8859-1 and
+ * UTF-8 directly, without going through a {@link java.nio.charset.CharsetDecoder}.
+ * <p>
+ * Words are read by code point, so a letter outside the Basic Multilingual Plane is kept whole rather than split into
+ * two surrogates that aren't letters, even when the pair is split between two blocks. A combining mark continues the
+ * word before it, so that text with decomposed accents isn't split in the middle of words. Letters are folded with a
+ * {@link CaseFolding}, and words can also be put into a Unicode {@link Normalizer.Form} before they are passed on.
+ * <p>
+ * With the default settings, text made up of characters from the Basic Multilingual Plane without combining marks
+ * gives the same words and character count as {@link CharTokenizer}.
+ */
+public class BlockTokenizer implements Tokenizer {
+
+    /**
+     * The ways that letters can be folded before they are added to a word.
+     */
+    public enum CaseFolding {
+        LOWER(false), // the lowercase form of each letter, as the tokenizers have always done
+        FOLD(true); // the lowercase form of the uppercase form, as String.equalsIgnoreCase compares, so that letters
+                    // with several lowercase forms, such as the final and the ordinary Greek sigma, become the same
+
+        private final boolean viaUpper; // whether letters are put in uppercase before they are put in lowercase
+
+        /*
+        Maps every character in the Basic Multilingual Plane to its folded form if it is a letter, or to 0 if it is
+        not. 0 can never be the result for a letter, so it doubles as the "not a letter" flag.
+         */
+        final char[] table = new char[Character.MAX_VALUE + 1];
+
+        CaseFolding(boolean viaUpper) {
+            this.viaUpper = viaUpper;
+            for (int c = 0; c < table.length; c++) {
+                int folded = Character.isAlphabetic(c) ? apply(c) : 0;
+                // the rare letter whose folded form is outside the plane is left to the slow path
+                table[c] = Character.isBmpCodePoint(folded) ? (char) folded : 0;
+            }
+        }
+
+        /**
+         * @param codePoint a letter
+         * @return the folded form of the letter
+         */
+        int apply(int codePoint) {
+            return Character.toLowerCase(viaUpper ? Character.toUpperCase(codePoint) : codePoint);
+        }
+
+        /**
+         * Folds the letters of some text one code point at a time, the same way the tokenizers fold the letters of a
+         * word, so that text typed by the user can be compared with keywords. Unlike {@link String#toLowerCase()},
+         * the result never depends on the locale or on the letters around each one.
+         * @param text text to fold
+         * @return the text with every letter folded and everything else left as it is
+         */
+        String fold(String text) {
+            StringBuilder folded = new StringBuilder(text.length());
+            text.codePoints().forEach(c -> folded.appendCodePoint(Character.isAlphabetic(c) ? apply(c) : c));
+            return folded.toString();
+        }
+    }
+
+    static final int BLOCK_SIZE = 1 << 16; // number of characters read from the input at a time
+    static final char FIRST_MARK = '\u0300'; // no character below this is a combining mark or a surrogate
+    static final int REPLACEMENT = 0xFFFD; // the character that malformed input is replaced with
+
+    // maps every ASCII character to its lowercase form if it is a letter, or to 0. Every CaseFolding agrees on ASCII
+    static final char[] ASCII_LOWER = Arrays.copyOf(CaseFolding.LOWER.table, 128);
+
+    private final CaseFolding folding;
+    private final Normalizer.Form normalization; // form that words are put into, or null to leave them as they are
+    private final char[] table; // the table of the CaseFolding
+
+    char[] word = new char[32]; // holds the word currently being built
+    int wordLen = 0; // number of characters in the current word
+    private char highSurrogate = 0; // a high surrogate that ended the last block, waiting for its low surrogate
+    private char[] normalized = new char[32]; // holds a word after normalization
+
+    /**
+     * Creates a tokenizer that puts letters in lowercase, without normalizing words.
+     */
+    public BlockTokenizer() {
+        this(CaseFolding.LOWER, null);
+    }
+
+    /**
+     * @param folding how letters are folded
+     * @param normalization Unicode normalization form that words are put into, or null to leave them as they are
+     */
+    public BlockTokenizer(CaseFolding folding, Normalizer.Form normalization) {
+        this.folding = folding;
+        this.normalization = normalization;
+        table = folding.table;
+    }
+
+    @Override
+    public long tokenize(Reader in, TokenHandler handler) throws IOException {
+        char[] block = new char[BLOCK_SIZE];
+        long characterCount = 0;
+        int n;
+        while ((n = in.read(block, 0, block.length)) != -1) {
+            scan(block, 0, n, handler);
+            characterCount += n;
+        }
+        return characterCount;
+    }
+
+    /**
+     * Scans a block of characters, continuing whatever word was left unfinished by the previous block.
+     * @param buf characters to scan
+     * @param off index of the first character to scan
+     * @param len number of characters to scan
+     * @param handler TokenHandler to pass completed words to
+     */
+    void scan(char[] buf, int off, int len, TokenHandler handler) {
+        int end = off + len;
+        if (highSurrogate != 0 && off < end) {
+            // pairs the high surrogate left by the last block with the low surrogate starting this one
+            char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(buf[off])) codePoint(Character.toCodePoint(high, buf[off++]), handler);
+            else codePoint(high, handler);
+        }
+
+        char[] table = this.table;
+        char[] word = this.word;
+        int wordLen = this.wordLen;
+        for (int i = off; i < end; i++) {
+            char c = buf[i];
+            char lower = table[c];
+
+            if (lower != 0) {
+                if (wordLen == word.length) word = this.word = Arrays.copyOf(word, wordLen * 2);
+                word[wordLen++] = lower;
+            } else if (c >= FIRST_MARK) {
+                // a character that isn't a letter but may be a combining mark or a surrogate
+                this.wordLen = wordLen;
+                i = scanCodePoint(buf, i, end, handler);
+                word = this.word;
+                wordLen = this.wordLen;
+            } else if (wordLen > 0) {
+                emit(word, wordLen, handler);
+                wordLen = 0;
+            }
+        }
+        this.wordLen = wordLen;
+    }
+
+    /**
+     * Scans bytes as ASCII characters, continuing whatever word was left unfinished before. Stops at the first byte
+     * outside of ASCII so that the caller can decode it.
+     * @param buf bytes to scan
+     * @param from index of the first byte to scan
+     * @param to index after the last byte to scan
+     * @param handler TokenHandler to pass completed words to
+     * @return index of the first byte that was not scanned, which is either {@code to} or a byte outside of ASCII
+     */
+    int scanAscii(ByteBuffer buf, int from, int to, TokenHandler handler) {
+        char[] table = this.table;
+        char[] word = this.word;
+        int wordLen = this.wordLen;
+        int i = from;
+        for (; i < to; i++) {
+            byte b = buf.get(i);
+            if (b < 0) break;
+            char lower = table[b];
+
+            if (lower != 0) {
+                if (wordLen == word.length) word = this.word = Arrays.copyOf(word, wordLen * 2);
+                word[wordLen++] = lower;
+            } else if (wordLen > 0) {
+                emit(word, wordLen, handler);
+                wordLen = 0;
+            }
+        }
+        this.wordLen = wordLen;
+        return i;
+    }
+
+    /**
+     * Scans bytes as ISO-8859-1 characters, continuing whatever word was left unfinished before. Every byte is a
+     * whole character in ISO-8859-1, so each one is looked up in the table without being decoded.
+     * @param buf bytes to scan
+     * @param from index of the first byte to scan
+     * @param to index after the last byte to scan
+     * @param handler TokenHandler to pass completed words to
+     */
+    void scanLatin1(ByteBuffer buf, int from, int to, TokenHandler handler) {
+        char[] table = this.table;
+        char[] word = this.word;
+        int wordLen = this.wordLen;
+        for (int i = from; i < to; i++) {
+            char lower = table[buf.get(i) & 0xFF];
+
+            if (lower != 0) {
+                if (wordLen == word.length) word = this.word = Arrays.copyOf(word, wordLen * 2);
+                word[wordLen++] = lower;
+            } else if (wordLen > 0) {
+                emit(word, wordLen, handler);
+                wordLen = 0;
+            }
+        }
+        this.wordLen = wordLen;
+    }
+
+    /**
+     * Decodes UTF-8 bytes straight into the tokenizer, continuing whatever word was left unfinished before. Runs of
+     * ASCII are scanned by {@link #scanAscii}, and longer sequences are decoded by hand. Malformed input is replaced
+     * with U+FFFD following the same rules as the JDK's decoder, so the words and character counts are the same as
+     * when decoding through a {@link java.nio.charset.CharsetDecoder}.
+     * @param buf bytes to scan, from its position to its limit. The position is advanced past every byte consumed
+     * @param endOfInput whether no more bytes follow these ones. If not, a partial character at the end is left
+     *                   unconsumed
+     * @param handler TokenHandler to pass completed words to
+     * @return the number of characters decoded
+     */
+    int scanUtf8(ByteBuffer buf, boolean endOfInput, TokenHandler handler) {
+        int characterCount = 0;
+        int limit = buf.limit();
+        int i = buf.position();
+        while (i < limit) {
+            int stop = scanAscii(buf, i, limit, handler);
+            characterCount += stop - i;
+            i = stop;
+            if (i == limit) break;
+
+            int b0 = buf.get(i) & 0xFF;
+            if (b0 >= 0xC2 && b0 < 0xF0 && i + 2 < limit) {
+                // a well-formed two or three byte sequence that decodes to a letter goes straight into the word
+                int b1 = buf.get(i + 1), b2 = buf.get(i + 2);
+                char lower = 0;
+                int length = 0;
+                if (b0 < 0xE0) {
+                    if ((b1 & 0xC0) == 0x80) {
+                        lower = table[(b0 & 0x1F) << 6 | b1 & 0x3F];
+                        length = 2;
+                    }
+                } else if ((b1 & 0xC0) == 0x80 && (b2 & 0xC0) == 0x80) {
+                    int codePoint = (b0 & 0x0F) << 12 | (b1 & 0x3F) << 6 | b2 & 0x3F;
+                    // overlong encodings are left to the checks below, and surrogates are never letters
+                    if (codePoint >= 0x800) lower = table[codePoint];
+                    length = 3;
+                }
+                if (lower != 0) {
+                    if (wordLen == word.length) word = Arrays.copyOf(word, wordLen * 2);
+                    word[wordLen++] = lower;
+                    characterCount++;
+                    i += length;
+                    continue;
+                }
+            }
+
+            // decodes one sequence, stopping at the first byte that can't continue it
+            int length = utf8Length(b0);
+            int codePoint = b0 & (0x7F >> length);
+            int k = 1;
+            for (; k < length && i + k < limit; k++) {
+                int b = buf.get(i + k) & 0xFF;
+                if (b < utf8Min(b0, k) || b > utf8Max(b0, k)) break;
+                codePoint = codePoint << 6 | b & 0x3F;
+            }
+
+            if (length > 0 && k == length) {
+                // a surrogate encoded on its own is replaced as a whole, as the JDK does
+                if (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)
+                    codePoint = REPLACEMENT;
+                codePoint(codePoint, handler);
+                characterCount += Character.charCount(codePoint);
+                i += length;
+            } else if (length > 0 && i + k == limit && !endOfInput) break; // left for the next call
+            else {
+                codePoint(REPLACEMENT, handler);
+                characterCount++;
+                i += k;
+            }
+        }
+        buf.position(i);
+        return characterCount;
+    }
+
+    /**
+     * @param b0 first byte of a UTF-8 sequence
+     * @return the number of bytes in a sequence starting with the byte, or 0 if no multibyte sequence can start with
+     *         it
+     */
+    static int utf8Length(int b0) {
+        if (b0 >= 0xC2 && b0 <= 0xDF) return 2;
+        if (b0 >= 0xE0 && b0 <= 0xEF) return 3;
+        if (b0 >= 0xF0 && b0 <= 0xF4) return 4;
+        return 0;
+    }
+
+    /**
+     * @return the lowest value allowed for byte k of a UTF-8 sequence starting with b0, which rules out overlong
+     *         encodings
+     */
+    static int utf8Min(int b0, int k) {
+        if (k == 1 && b0 == 0xE0) return 0xA0;
+        if (k == 1 && b0 == 0xF0) return 0x90;
+        return 0x80;
+    }
+
+    /**
+     * @return the highest value allowed for byte k of a UTF-8 sequence starting with b0, which rules out code points
+     *         past U+10FFFF
+     */
+    static int utf8Max(int b0, int k) {
+        return k == 1 && b0 == 0xF4 ? 0x8F : 0xBF;
+    }
+
+    /**
+     * @return a copy of the word that has been started but not yet ended by a non-letter
+     */
+    char[] pendingWord() {
+        return Arrays.copyOf(word, wordLen);
+    }
+
+    /**
+     * Replaces the word being built, so that a scan can carry on from where an earlier one stopped.
+     * @param pending characters of the unfinished word, already folded
+     */
+    void setPendingWord(char[] pending) {
+        if (pending.length > word.length) word = Arrays.copyOf(word, Integer.highestOneBit(pending.length) << 1);
+        System.arraycopy(pending, 0, word, 0, pending.length);
+        wordLen = pending.length;
+    }
+
+    /**
+     * Scans a character that isn't a letter in the table, along with its low surrogate if it is a high one.
+     * A high surrogate at the end of the block is kept until the next block is scanned.
+     * @return index of the last character that was scanned
+     */
+    private int scanCodePoint(char[] buf, int i, int end, TokenHandler handler) {
+        char c = buf[i];
+        if (Character.isHighSurrogate(c)) {
+            if (i + 1 == end) {
+                highSurrogate = c;
+                return i;
+            }
+            if (Character.isLowSurrogate(buf[i + 1])) {
+                codePoint(Character.toCodePoint(c, buf[i + 1]), handler);
+                return i + 1;
+            }
+        }
+        codePoint(c, handler);
+        return i;
+    }
+
+    /**
+     * Adds a code point to the current word if it is a letter, or a combining mark following a letter, and otherwise
+     * ends the current word.
+     */
+    private void codePoint(int codePoint, TokenHandler handler) {
+        if (Character.isBmpCodePoint(codePoint) && table[codePoint] != 0) append(table[codePoint]);
+        else if (Character.isAlphabetic(codePoint)) append(folding.apply(codePoint));
+        else if (wordLen > 0 && isMark(codePoint)) append(codePoint);
+        else if (wordLen > 0) {
+            emit(word, wordLen, handler);
+            wordLen = 0;
+        }
+    }
+
+    private void append(int codePoint) {
+        if (wordLen + 2 > word.length) word = Arrays.copyOf(word, word.length * 2);
+        wordLen += Character.toChars(codePoint, word, wordLen);
+    }
+
+    /**
+     * Passes a completed word to the handler, putting it into the normalization form first if there is one. Words
+     * made up only of ASCII characters are already in every form.
+     */
+    private void emit(char[] word, int len, TokenHandler handler) {
+        if (normalization != null && !isAscii(word, len)) {
+            CharBuffer chars = CharBuffer.wrap(word, 0, len);
+            if (!Normalizer.isNormalized(chars, normalization)) {
+                String form = Normalizer.normalize(chars, normalization);
+                /*
+                Folds the word again, since compatibility forms can turn a letter without a lowercase form into a
+                letter with one, e.g. the black-letter capital H into 'H'.
+                 */
+                int n = 0;
+                if (normalized.length < form.length() * 2) normalized = new char[form.length() * 2];
+                for (int i = 0; i < form.length(); ) {
+                    int codePoint = form.codePointAt(i);
+                    i += Character.charCount(codePoint);
+                    if (Character.isAlphabetic(codePoint)) codePoint = folding.apply(codePoint);
+                    n += Character.toChars(codePoint, normalized, n);
+                }
+                handler.word(normalized, 0, n);
+                return;
+            }
+        }
+        handler.word(word, 0, len);
+    }
+
+    private static boolean isAscii(char[] word, int len) {
+        for (int i = 0; i < len; i++) {
+            if (word[i] >= 128) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the code point is a combining mark, which belongs to the letter before it
+     */
+    private static boolean isMark(int codePoint) {
+        int type = Character.getType(codePoint);
+        return type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK
+                || type == Character.ENCLOSING_MARK;
+    }
+}
@@ -0,0 +1,39 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * The original tokenizer, which reads one character at a time through a {@link BufferedReader}. Kept so that results
+ * can be compared against {@link BlockTokenizer}. Since it reads chars rather than code points, letters outside the
+ * Basic Multilingual Plane are split into surrogates, which aren't letters, and dropped.
+ */
+public class CharTokenizer implements Tokenizer {
+
+    @Override
+    public long tokenize(Reader in, TokenHandler handler) throws IOException {
+        BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        long characterCount = 0;
+        StringBuilder word = new StringBuilder();
+        char[] chars = new char[16]; // for passing the finished word to the handler
+
+        while (reader.ready()) {
+            characterCount++; // increments character count
+            char c = (char) reader.read(); // reads character
+
+            // if the character is a letter, converts it to lowercase and adds it to the current word
+            if (Character.isAlphabetic(c))
+                word.append(Character.toLowerCase(c));
+
+            // if the character is not a letter, the current word must be over
+            else if (!word.isEmpty()) {
+                if (word.length() > chars.length) chars = new char[word.capacity()];
+                word.getChars(0, word.length(), chars, 0);
+                handler.word(chars, 0, word.length());
+
+                // clears the current word
+                word.delete(0, word.length());
+            }
+        }
+        return characterCount;
+    }
+}
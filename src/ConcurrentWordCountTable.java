@@ -0,0 +1,187 @@
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Counts words from several threads at once in a single table, so that threads scanning parts of the same file don't
+ * each need a table holding the whole vocabulary. The words are split by hash between a number of stripes, each an
+ * ordinary {@link WordCountTable} guarded by its own lock, so threads only wait for each other when they count words
+ * in the same stripe at the same moment.
+ * <p>
+ * The counts of a text are heavily skewed towards a few common words, which would keep the threads taking the same
+ * few locks from each other, so threads usually gather their counts in a small table of their own and add them with
+ * {@link #addAll(WordCountTable)} every so often, each word then taking a lock once however many times it was seen.
+ * <p>
+ * {@link #snapshot()} copies the counts while holding every lock at once, so the copy is exactly the table as it was
+ * at one moment, and can be ranked at leisure while the threads carry on counting.
+ */
+public class ConcurrentWordCountTable {
+
+    private final WordCountTable[] stripes; // the words whose hash picks each stripe
+    private final ReentrantLock[] locks; // the lock guarding each stripe
+    private final int shift; // 32 - log2(number of stripes), for taking a stripe from the top bits of a mixed hash
+
+    /**
+     * @param stripes number of stripes, which is rounded up to a power of two of at least 2. A few times the number of
+     *                threads counting at once keeps them from waiting on each other
+     */
+    public ConcurrentWordCountTable(int stripes) {
+        int count = Math.max(2, Integer.highestOneBit(Math.max(1, stripes - 1)) << 1);
+        this.stripes = new WordCountTable[count];
+        locks = new ReentrantLock[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new WordCountTable();
+            locks[i] = new ReentrantLock();
+        }
+        shift = 32 - Integer.numberOfTrailingZeros(count);
+    }
+
+    /**
+     * Adds one to the count of a word, adding the word to the table if it isn't there already. Safe to call from
+     * several threads at once.
+     * @param buf buffer holding the word
+     * @param off index of the first character of the word
+     * @param len number of characters in the word
+     * @return the new count of the word
+     */
+    public long increment(char[] buf, int off, int len) {
+        int hash = 0; // the same as String.hashCode() of the word
+        for (int i = off, end = off + len; i < end; i++) hash = 31 * hash + buf[i];
+        int stripe = stripe(hash);
+        locks[stripe].lock();
+        try {
+            return stripes[stripe].increment(buf, off, len);
+        } finally {
+            locks[stripe].unlock();
+        }
+    }
+
+    /**
+     * Adds to the count of a word, adding the word to the table if it isn't there already. Safe to call from several
+     * threads at once.
+     * @param word word to add to
+     * @param count amount to add to the word's count
+     * @return the new count of the word
+     */
+    public long add(String word, long count) {
+        int stripe = stripe(word.hashCode());
+        locks[stripe].lock();
+        try {
+            return stripes[stripe].add(word, count);
+        } finally {
+            locks[stripe].unlock();
+        }
+    }
+
+    /**
+     * @param word word to look up
+     * @return the count of the word, or 0 if it isn't in the table
+     */
+    public long get(String word) {
+        int stripe = stripe(word.hashCode());
+        locks[stripe].lock();
+        try {
+            return stripes[stripe].get(word);
+        } finally {
+            locks[stripe].unlock();
+        }
+    }
+
+    /**
+     * Adds every count in another table to this one, such as the counts a thread has gathered on its own. Each word is
+     * added under its stripe's lock on its own, so other threads can count while the table is being added.
+     * @param other WordCountTable to add from, which must not be changed while it is being added
+     */
+    public void addAll(WordCountTable other) {
+        other.forEach(this::add);
+    }
+
+    /**
+     * Copies the counts of every word, holding every stripe's lock at once so that no count changes during the copy.
+     * Counting in every thread waits while the copy is made, so this is meant for the end of a scan, or for occasional
+     * use during one.
+     * @return a new WordCountTable holding the counts as they were at one moment
+     */
+    public WordCountTable snapshot() {
+        WordCountTable copy = new WordCountTable();
+        copyTo(copy);
+        return copy;
+    }
+
+    /**
+     * Adds the counts of every word to another table, holding every stripe's lock at once the same way as
+     * {@link #snapshot()}. Saves making a copy when the counts are going into another table anyway.
+     * @param target WordCountTable to add the counts to
+     */
+    public void copyTo(WordCountTable target) {
+        for (ReentrantLock lock : locks) lock.lock();
+        try {
+            for (WordCountTable stripe : stripes) target.addAll(stripe);
+        } finally {
+            for (ReentrantLock lock : locks) lock.unlock();
+        }
+    }
+
+    /**
+     * Moves the counts of every word into another table once counting has finished, emptying the stripes one at a time
+     * so that the two tables never hold much more than one copy of the counts between them.
+     * @param target WordCountTable to add the counts to
+     */
+    public void moveTo(WordCountTable target) {
+        for (int i = 0; i < stripes.length; i++) {
+            locks[i].lock();
+            try {
+                target.addAll(stripes[i]);
+                stripes[i] = new WordCountTable();
+            } finally {
+                locks[i].unlock();
+            }
+        }
+    }
+
+    /**
+     * Finds the k highest-ranked words, one stripe at a time, so that counting only ever waits for a single stripe.
+     * Every count is exact as of when its stripe was read, but the stripes are read at slightly different moments, so
+     * use {@link #snapshot()} where the ranking must match one moment exactly.
+     * @param k number of words to find
+     * @return a new list of at most k entries, ordered by {@link WordCountTable#RANK_ORDER}
+     */
+    public ArrayList<Map.Entry<String, Long>> topK(int k) {
+        // every word of the overall top k is in the top k of its own stripe
+        ArrayList<Map.Entry<String, Long>> candidates = new ArrayList<>();
+        for (int i = 0; i < stripes.length; i++) {
+            locks[i].lock();
+            try {
+                candidates.addAll(stripes[i].topK(k));
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        candidates.sort(WordCountTable.RANK_ORDER);
+        return new ArrayList<>(candidates.subList(0, Math.min(k, candidates.size())));
+    }
+
+    /**
+     * @return the number of distinct words in the table, counting each stripe under its lock in turn
+     */
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            locks[i].lock();
+            try {
+                size += stripes[i].size();
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the index of the stripe holding the word with the given hash, taken from the top bits of a mixed hash
+     *         since the low bits pick the word's slot within the stripe
+     */
+    private int stripe(int hash) {
+        return (hash * 0x9E3779B9) >>> shift;
+    }
+}
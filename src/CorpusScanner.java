@@ -0,0 +1,143 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Scans many files at once on a work-stealing {@link ForkJoinPool}, keeping both the counts of each file and the
+ * combined counts of the whole corpus.
+ * <p>
+ * Every file gets its own task, and the tasks are forked from the largest file to the smallest. Idle workers steal the
+ * oldest tasks first, so the big files get started early while the small ones fill in the gaps at the end. Unless
+ * the options name an engine, files of at least {@link #LARGE_FILE_SIZE} bytes are also split into chunks by
+ * {@link ParallelScanner} on the same pool, so a single huge file can't hold up the rest of the scan. A chosen engine
+ * is kept for every file, except that {@link WordCounter.ScanMode#PIPELINED} splits large files the same way, and
+ * both it and {@link WordCounter.ScanMode#PARALLEL} scan small files with {@link WordCounter.ScanMode#MAPPED}. One
+ * {@link StopFilter} is shared by every task, since nothing changes it once it has been read.
+ */
+public class CorpusScanner {
+
+    static final long LARGE_FILE_SIZE = ParallelScanner.MIN_CHUNK_SIZE * 4; // smallest file split into chunks
+
+    private final LinkedHashMap<File, WordCounter> fileCounters = new LinkedHashMap<>(); // counts of each file
+    private final WordCounter corpusCounter; // combined counts of every file
+
+    /**
+     * Creates a new instance of CorpusScanner that immediately scans every file passed to it.
+     * @param files files to scan
+     * @param stopFilter StopFilter instance shared by every file for filtering out stop words
+     * @param options settings for the scan, whose thread count sets the size of the pool
+     * @param progress ScanProgress to report the progress of every file to
+     * @return an instance of CorpusScanner
+     */
+    public static CorpusScanner createCorpusScanner(List<File> files, StopFilter stopFilter, ScanOptions options,
+                                                    ScanProgress progress) throws FileNotFoundException {
+        return new CorpusScanner(files, stopFilter, options, progress);
+    }
+
+    /**
+     * @return the counts of each file, in the order the files were given
+     */
+    public LinkedHashMap<File, WordCounter> getFileCounters() {
+        return fileCounters;
+    }
+
+    /**
+     * @return the combined counts of every file
+     */
+    public WordCounter getCorpusCounter() {
+        return corpusCounter;
+    }
+
+    /**
+     * Scans every file, then merges their counts.
+     * @param files files to scan
+     * @param stopFilter StopFilter instance shared by every file
+     * @param options settings for the scan
+     * @param progress ScanProgress to report to
+     */
+    private CorpusScanner(List<File> files, StopFilter stopFilter, ScanOptions options, ScanProgress progress)
+            throws FileNotFoundException {
+        long totalBytes = 0;
+        for (File file : files) totalBytes += file.length();
+        progress.start(totalBytes);
+
+        ForkJoinPool pool = options.pool != null ? options.pool : new ForkJoinPool(options.threads);
+        WordCounter[] counters = new WordCounter[files.size()];
+        try {
+            // orders the files from the largest to the smallest
+            Integer[] order = new Integer[files.size()];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            Arrays.sort(order, Comparator.comparingLong((Integer i) -> files.get(i).length()).reversed());
+
+            List<FileTask> tasks = new ArrayList<>();
+            for (int i : order) tasks.add(new FileTask(files.get(i), i, counters, stopFilter, options, pool, progress));
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    ForkJoinTask.invokeAll(tasks);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            if (e.getCause() instanceof FileNotFoundException) throw (FileNotFoundException) e.getCause();
+            throw e;
+        } finally {
+            if (pool != options.pool) pool.shutdown();
+        }
+
+        WordTally corpus = new WordTally(stopFilter, new ScanProgress(), options.phraseLength, options.maxPhrases);
+        for (int i = 0; i < counters.length; i++) {
+            fileCounters.put(files.get(i), counters[i]);
+            corpus.merge(counters[i].tally);
+        }
+        corpusCounter = WordCounter.fromTally(corpus);
+    }
+
+    /**
+     * Scans a single file of the corpus.
+     */
+    @SuppressWarnings("serial")
+    private static class FileTask extends RecursiveAction {
+
+        private final File file;
+        private final int index; // where to put the result in counters
+        private final WordCounter[] counters;
+        private final StopFilter stopFilter;
+        private final ScanOptions options;
+        private final ScanProgress progress;
+
+        FileTask(File file, int index, WordCounter[] counters, StopFilter stopFilter, ScanOptions options,
+                 ForkJoinPool pool, ScanProgress progress) {
+            this.file = file;
+            this.index = index;
+            this.counters = counters;
+            this.stopFilter = stopFilter;
+            this.progress = progress;
+
+            /*
+            Large files are split into chunks on the same pool, unless a single-threaded engine was chosen, and the
+            rest are scanned on a single thread. Files aren't pipelined, since the pool already keeps every core busy
+            with other files.
+             */
+            WordCounter.ScanMode scanMode = options.scanMode;
+            boolean multithreaded = scanMode == WordCounter.ScanMode.PARALLEL
+                    || scanMode == WordCounter.ScanMode.PIPELINED;
+            if (file.length() >= LARGE_FILE_SIZE && (multithreaded || !options.scanModeChosen))
+                scanMode = WordCounter.ScanMode.PARALLEL;
+            else if (multithreaded) scanMode = WordCounter.ScanMode.MAPPED;
+            this.options = options.copy().scanMode(scanMode).pool(pool);
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                counters[index] = WordCounter.scan(file, stopFilter, options, progress);
+            } catch (FileNotFoundException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
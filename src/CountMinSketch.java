@@ -0,0 +1,96 @@
+/**
+ * Estimates how many times each of an unbounded number of items has been seen, in a fixed amount of memory. Each item
+ * is hashed to one counter in each of {@link #DEPTH} rows, and its estimate is the smallest of those counters. Since
+ * counters are only ever shared, never split, an estimate is never below the true count, and with a width of w it is
+ * rarely more than 2.72 / w of the total count above it.
+ * <p>
+ * Updates are conservative: each of an item's counters is only raised as far as the item's new estimate, rather than
+ * by the full amount, which keeps estimates tighter. Items are identified by a 64-bit hash, from
+ * {@link #hash(char[], int, int)}.
+ */
+public class CountMinSketch {
+
+    static final int DEPTH = 4; // number of rows, each with its own hash function
+    // odd multipliers that turn one 64-bit hash into a different index for each row
+    private static final long[] ROW_SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L,
+            0xD6E8FEB86659FD93L};
+
+    private final long[] cells; // the rows one after another, each holding width counters
+    private final int width; // number of counters in each row, a power of two
+    private final int shift; // 64 - log2(width), for taking an index from the top bits of a mixed hash
+
+    /**
+     * @param width number of counters in each row, which is rounded up to a power of two
+     */
+    public CountMinSketch(int width) {
+        this.width = Math.max(2, Integer.highestOneBit(Math.max(1, width - 1)) << 1);
+        shift = 64 - Integer.numberOfTrailingZeros(this.width);
+        cells = new long[DEPTH * this.width];
+    }
+
+    /**
+     * Hashes an item for the sketch. Uses 64-bit FNV-1a, so that it is independent of {@link String#hashCode()}, which
+     * picks the item's slot in the exact tables.
+     * @param buf buffer holding the item
+     * @param off index of the first character
+     * @param len number of characters
+     * @return the hash of the item
+     */
+    static long hash(char[] buf, int off, int len) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = off, end = off + len; i < end; i++) hash = (hash ^ buf[i]) * 0x100000001B3L;
+        return hash;
+    }
+
+    /**
+     * @param item item to hash
+     * @return the same hash as {@link #hash(char[], int, int)} gives for the characters of the String
+     */
+    static long hash(String item) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < item.length(); i++) hash = (hash ^ item.charAt(i)) * 0x100000001B3L;
+        return hash;
+    }
+
+    /**
+     * Counts an item, raising its estimate by the given amount.
+     * @param hash hash of the item
+     * @param count number of times the item was seen
+     * @return the new estimate of the item's count
+     */
+    public long add(long hash, long count) {
+        long estimate = estimate(hash) + count;
+        for (int row = 0; row < DEPTH; row++) {
+            int cell = index(hash, row);
+            if (cells[cell] < estimate) cells[cell] = estimate;
+        }
+        return estimate;
+    }
+
+    /**
+     * @param hash hash of the item
+     * @return the estimated count of the item, which is never less than the number of times it was added
+     */
+    public long estimate(long hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) estimate = Math.min(estimate, cells[index(hash, row)]);
+        return estimate;
+    }
+
+    /**
+     * Adds the counts of another sketch of the same width to this one, as if every item added to it had been added to
+     * this one.
+     * @param other CountMinSketch to add from
+     */
+    public void addAll(CountMinSketch other) {
+        if (other.width != width) throw new IllegalArgumentException("sketches have different widths");
+        for (int i = 0; i < cells.length; i++) cells[i] += other.cells[i];
+    }
+
+    /**
+     * @return the index in {@link #cells} of the item's counter in the given row
+     */
+    private int index(long hash, int row) {
+        return row * width + (int) ((hash * ROW_SEEDS[row]) >>> shift);
+    }
+}
@@ -0,0 +1,379 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Records how many documents of a corpus each keyword appears in, so that the keywords of any document can be ranked
+ * by TF-IDF: how often a keyword appears in the document, weighted by how rare it is across the corpus. Keywords that
+ * are common to most documents drop down the ranking, and the ones that set a document apart rise to the top.
+ * <p>
+ * The index is kept in a file that is memory-mapped for lookups, so ranking a document only reads the parts of the
+ * file holding its keywords, never the corpus or even the whole index. Keywords are stored in the order of their UTF-8
+ * bytes, in blocks of {@link #BLOCK_SIZE} that are front-coded the same way as a {@link ResultSnapshot}, and the file
+ * ends with the position of every block. A lookup binary searches the first keyword of each block, then reads through
+ * that one block.
+ */
+public class DocumentFrequencyIndex {
+
+    public static final String EXTENSION = "dfi"; // file extension of index files
+
+    static final int MAGIC = 0x54584446; // "TXDF", marks the start of every index file
+    static final int VERSION = 1; // changed whenever the layout of the file changes
+    static final int HEADER_SIZE = 32; // number of bytes before the first block
+    static final int BLOCK_SIZE = 64; // number of keywords in each block
+    static final int BUFFER_SIZE = 1 << 16; // number of bytes written to the channel at a time
+
+    // ranks by score, then alphabetically for equal scores, like WordCountTable.RANK_ORDER does with counts
+    static final Comparator<Map.Entry<String, Double>> SCORE_ORDER = (o1, o2) -> {
+        int byScore = Double.compare(o2.getValue(), o1.getValue());
+        return byScore != 0 ? byScore : o1.getKey().compareTo(o2.getKey());
+    };
+
+    private final ByteBuffer in; // the whole file, which is only ever read through duplicates or absolute gets
+    private final long documentCount; // number of documents added to the index
+    private final int size; // number of distinct keywords
+    private final int maxKeywordBytes; // length of the longest keyword in UTF-8 bytes
+    private final int blockCount; // number of blocks
+    private final int blockTable; // position of the table holding the position of every block
+
+    /**
+     * Opens an index file by memory-mapping it.
+     * @param file index file to open
+     * @return a DocumentFrequencyIndex reading from the file
+     * @throws IOException if the file can't be read or isn't an index
+     */
+    public static DocumentFrequencyIndex open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("index is too large: " + file);
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                if (in.getInt() != MAGIC) throw new IOException("not an index file: " + file);
+                int version = in.getInt();
+                if (version != VERSION) throw new IOException("unsupported index version " + version + ": " + file);
+                DocumentFrequencyIndex index = new DocumentFrequencyIndex(in, in.getLong(), in.getInt(), in.getInt(),
+                        in.getInt(), in.getInt());
+
+                // checks that every block lies inside the file, so that lookups never read past it
+                if (index.documentCount < 0 || index.size < 0 || index.maxKeywordBytes < 0
+                        || index.blockCount != (index.size + BLOCK_SIZE - 1) / BLOCK_SIZE
+                        || index.blockTable < HEADER_SIZE || index.blockTable + 4L * index.blockCount != in.limit()) {
+                    throw new IOException("corrupt index: " + file);
+                }
+                for (int block = 0; block < index.blockCount; block++) {
+                    int position = index.blockPosition(block);
+                    if (position < HEADER_SIZE || position >= index.blockTable) {
+                        throw new IOException("corrupt index: " + file);
+                    }
+                }
+                return index;
+            } catch (BufferUnderflowException e) {
+                throw new IOException("corrupt index: " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Adds documents to an index file, creating it if it doesn't exist yet. Each keyword of a document adds 1 to the
+     * number of documents it appears in, however many times it appears. The new index is written next to the old one
+     * and then moved over it, so the file is never left half-written.
+     * @param file index file to add to
+     * @param documents results of scanning each document
+     * @return the updated index
+     */
+    public static DocumentFrequencyIndex addDocuments(File file, Collection<WordCounter> documents)
+            throws IOException {
+        WordCountTable frequencies = new WordCountTable();
+        long documentCount = 0;
+        if (file.isFile()) {
+            DocumentFrequencyIndex index = open(file);
+            documentCount = index.documentCount;
+            index.forEach(frequencies::add);
+        }
+        for (WordCounter document : documents) {
+            document.tally.wordMap.forEach((word, count) -> frequencies.add(word, 1));
+            documentCount++;
+        }
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        Files.createDirectories(directory.toPath());
+        // File.createTempFile needs a prefix of at least 3 characters, which a short file name might not give
+        File partial = File.createTempFile("." + file.getName() + "-", ".part", directory);
+        try {
+            try (FileChannel channel = FileChannel.open(partial.toPath(), StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                new IndexWriter(channel).write(documentCount, frequencies);
+            }
+            Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            partial.delete();
+        }
+        return open(file);
+    }
+
+    /**
+     * @return the number of documents added to the index
+     */
+    public long getDocumentCount() {
+        return documentCount;
+    }
+
+    /**
+     * @return the number of distinct keywords in the index
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Looks up how many documents a keyword appears in. Safe to call from several threads at once.
+     * @param keyword keyword to look up
+     * @return the number of documents the keyword appears in, or 0 if it isn't in the index
+     */
+    public long documentFrequency(String keyword) {
+        byte[] target = keyword.getBytes(StandardCharsets.UTF_8);
+        if (blockCount == 0 || target.length > maxKeywordBytes) return 0;
+        try {
+            // finds the last block whose first keyword doesn't come after the target
+            int low = 0, high = blockCount - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                ByteBuffer block = in.duplicate().position(blockPosition(mid));
+                ResultSnapshot.readVarint(block); // the first keyword of a block shares nothing with the one before
+                int length = ResultSnapshot.readVarint(block);
+                if (compareUnsigned(block, length, target) <= 0) low = mid;
+                else high = mid - 1;
+            }
+
+            ByteBuffer block = in.duplicate().position(blockPosition(low));
+            byte[] word = new byte[maxKeywordBytes];
+            for (int i = 0, n = Math.min(BLOCK_SIZE, size - low * BLOCK_SIZE); i < n; i++) {
+                int shared = ResultSnapshot.readVarint(block), suffix = ResultSnapshot.readVarint(block);
+                block.get(word, shared, suffix);
+                long frequency = ResultSnapshot.readVarLong(block);
+                int order = Arrays.compareUnsigned(word, 0, shared + suffix, target, 0, target.length);
+                if (order == 0) return frequency;
+                if (order > 0) break; // the keywords are in order, so the target can't come later
+            }
+            return 0;
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new UncheckedIOException(new IOException("corrupt index", e));
+        }
+    }
+
+    /**
+     * Works out how much a keyword's count is weighted by, using the smoothed inverse document frequency
+     * ln((1 + N) / (1 + df)) + 1. The smoothing keeps keywords that aren't in the index from dividing by 0, and the
+     * added 1 keeps keywords found in every document from being dropped entirely.
+     * @param documentFrequency number of documents the keyword appears in
+     * @return the weight of the keyword, which is higher for rarer keywords
+     */
+    public double inverseDocumentFrequency(long documentFrequency) {
+        return Math.log((1.0 + documentCount) / (1.0 + documentFrequency)) + 1;
+    }
+
+    /**
+     * Ranks the keywords of a document by TF-IDF, which is their count in the document times their inverse document
+     * frequency.
+     * @param document results of scanning the document
+     * @return a list of every keyword of the document and its score, from the highest score to the lowest
+     */
+    public ArrayList<Map.Entry<String, Double>> rank(WordCounter document) {
+        ArrayList<Map.Entry<String, Double>> ranked = new ArrayList<>(document.tally.wordMap.size());
+        document.tally.wordMap.forEach((word, count) -> ranked.add(new AbstractMap.SimpleImmutableEntry<>(word,
+                count * inverseDocumentFrequency(documentFrequency(word)))));
+        ranked.sort(SCORE_ORDER);
+        return ranked;
+    }
+
+    /**
+     * Passes every keyword and the number of documents it appears in to an action, in the order they are stored.
+     */
+    private void forEach(ObjLongConsumer<String> action) throws IOException {
+        ByteBuffer block = in.duplicate().position(HEADER_SIZE);
+        byte[] word = new byte[maxKeywordBytes];
+        try {
+            for (int i = 0; i < size; i++) {
+                int shared = ResultSnapshot.readVarint(block), suffix = ResultSnapshot.readVarint(block);
+                block.get(word, shared, suffix);
+                action.accept(new String(word, 0, shared + suffix, StandardCharsets.UTF_8),
+                        ResultSnapshot.readVarLong(block));
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("corrupt index", e);
+        }
+    }
+
+    /**
+     * @return the position in the file of a block's first keyword
+     */
+    private int blockPosition(int block) {
+        return in.getInt(blockTable + 4 * block);
+    }
+
+    /**
+     * Compares the next bytes of a buffer with a target, treating bytes as unsigned, which orders UTF-8 the same way
+     * as the code points it encodes.
+     * @return a negative number, zero or a positive number if the bytes come before, match or come after the target
+     */
+    private static int compareUnsigned(ByteBuffer buf, int length, byte[] target) {
+        for (int i = 0, n = Math.min(length, target.length); i < n; i++) {
+            int order = Integer.compare(buf.get() & 0xFF, target[i] & 0xFF);
+            if (order != 0) return order;
+        }
+        return Integer.compare(length, target.length);
+    }
+
+    /**
+     * @param in the whole file
+     * @param documentCount number of documents added to the index
+     * @param size number of distinct keywords
+     * @param maxKeywordBytes length of the longest keyword in UTF-8 bytes
+     * @param blockCount number of blocks
+     * @param blockTable position of the table holding the position of every block
+     */
+    private DocumentFrequencyIndex(ByteBuffer in, long documentCount, int size, int maxKeywordBytes, int blockCount,
+                                   int blockTable) {
+        this.in = in;
+        this.documentCount = documentCount;
+        this.size = size;
+        this.maxKeywordBytes = maxKeywordBytes;
+        this.blockCount = blockCount;
+        this.blockTable = blockTable;
+    }
+
+    /**
+     * Writes an index file: the header, then the blocks of keywords, then the table of block positions.
+     */
+    private static class IndexWriter {
+
+        private final FileChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private long written = 0; // number of bytes already handed to the channel
+
+        IndexWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * @param documentCount number of documents in the index
+         * @param frequencies every keyword and the number of documents it appears in
+         */
+        void write(long documentCount, WordCountTable frequencies) throws IOException {
+            int size = frequencies.size();
+            byte[][] words = new byte[size][];
+            long[] counts = new long[size];
+            int[] n = {0};
+            frequencies.forEach((word, count) -> {
+                words[n[0]] = word.getBytes(StandardCharsets.UTF_8);
+                counts[n[0]++] = count;
+            });
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(words[a], words[b]));
+
+            int maxKeywordBytes = 0;
+            for (byte[] word : words) maxKeywordBytes = Math.max(maxKeywordBytes, word.length);
+            int blockCount = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            int[] blockPositions = new int[blockCount];
+
+            buf.position(HEADER_SIZE); // the header is filled in once the position of the block table is known
+            byte[] last = new byte[0]; // the last keyword written, for working out the shared prefix
+            for (int i = 0; i < size; i++) {
+                byte[] word = words[order[i]];
+                int shared = 0;
+                if (i % BLOCK_SIZE == 0) {
+                    blockPositions[i / BLOCK_SIZE] = position(); // the first keyword of a block is stored whole
+                } else {
+                    int max = Math.min(word.length, last.length);
+                    while (shared < max && word[shared] == last[shared]) shared++;
+                }
+                ensureRemaining(10);
+                putVarLong(shared);
+                putVarLong(word.length - shared);
+                put(word, shared, word.length - shared);
+                ensureRemaining(10);
+                putVarLong(counts[order[i]]);
+                last = word;
+            }
+
+            int blockTable = position();
+            for (int position : blockPositions) {
+                ensureRemaining(4);
+                buf.putInt(position);
+            }
+            position(); // checks that the block table hasn't taken the file past what can be mapped
+            flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(documentCount).putInt(size).putInt(maxKeywordBytes)
+                    .putInt(blockCount).putInt(blockTable).flip();
+            while (header.hasRemaining()) channel.write(header, header.position());
+        }
+
+        /**
+         * @return the position in the file of the next byte written
+         * @throws IOException if the file has grown too large to be mapped as one buffer
+         */
+        private int position() throws IOException {
+            long position = written + buf.position();
+            if (position > Integer.MAX_VALUE) throw new IOException("index is too large");
+            return (int) position;
+        }
+
+        /**
+         * Copies bytes into the buffer, flushing it as often as needed for bytes that don't fit.
+         */
+        private void put(byte[] bytes, int off, int len) throws IOException {
+            while (len > 0) {
+                if (!buf.hasRemaining()) flush();
+                int count = Math.min(len, buf.remaining());
+                buf.put(bytes, off, count);
+                off += count;
+                len -= count;
+            }
+        }
+
+        /**
+         * Writes a non-negative long the same way as {@link ResultSnapshot} does, 7 bits per byte.
+         */
+        private void putVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                buf.put((byte) (value & 0x7F | 0x80));
+                value >>>= 7;
+            }
+            buf.put((byte) value);
+        }
+
+        /**
+         * Flushes the buffer if it has fewer than the given number of bytes left.
+         */
+        private void ensureRemaining(int bytes) throws IOException {
+            if (buf.remaining() < bytes) flush();
+        }
+
+        /**
+         * Writes everything in the buffer to the channel and empties it. The first flush leaves room for the header.
+         */
+        private void flush() throws IOException {
+            buf.flip();
+            if (written == 0) {
+                buf.position(HEADER_SIZE);
+                written = HEADER_SIZE;
+            }
+            while (buf.hasRemaining()) written += channel.write(buf, written);
+            buf.clear();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes ranked keywords and their counts, and optionally their TF-IDF scores, to a {@link Writer} in one of several
+ * formats. Lines are built straight into a fixed-size buffer that is handed to the Writer whenever it fills up, so the
+ * output is never held in memory all at once, and numbers and padding are written by hand rather than through
+ * {@link String#format}. Keywords can hold any letter, so the Writer should encode UTF-8 rather than the platform's
+ * default charset, which may not be able to encode them.
+ */
+public class KeywordExporter {
+
+    /**
+     * The formats that keywords can be exported in.
+     */
+    public enum Format {
+        TEXT("txt", "Text"), // the padded table that the keywords have always been saved as
+        CSV("csv", "CSV"), // comma-separated values, with a header line
+        TSV("tsv", "TSV"), // tab-separated values, with a header line
+        JSON("jsonl", "JSON lines"); // JSON lines, with one object per keyword
+
+        public final String extension; // file extension for files in this format
+        public final String label; // name of the format shown to the user
+
+        Format(String extension, String label) {
+            this.extension = extension;
+            this.label = label;
+        }
+    }
+
+    static final int BUFFER_SIZE = 1 << 14; // number of characters handed to the Writer at a time
+    static final String LINE_SEPARATOR = System.lineSeparator();
+    static final int SCORE_DECIMALS = 4; // number of decimal places scores are written with
+    static final long SCORE_SCALE = 10_000; // 10 to the power of SCORE_DECIMALS
+
+    private final Writer out;
+    private final char[] buf = new char[BUFFER_SIZE];
+    private int len = 0; // number of characters in the buffer
+
+    /**
+     * Writes every keyword held by a WordCounter, from the highest count to the lowest. Doesn't close the Writer.
+     * @param wordCounter results to write
+     * @param out Writer to write to
+     * @param format format to write in
+     */
+    static void export(WordCounter wordCounter, Writer out, Format format) throws IOException {
+        new KeywordExporter(out).write(wordCounter.getWordList(), null, format, "keyword",
+                wordCounter.tally.maxWordLen, wordCounter.maxWordCountDigits);
+    }
+
+    /**
+     * Writes every keyword held by a WordCounter along with its count and TF-IDF score, from the highest score to the
+     * lowest. Doesn't close the Writer.
+     * @param wordCounter results to write
+     * @param index document frequencies to score the keywords with
+     * @param out Writer to write to
+     * @param format format to write in
+     * @see DocumentFrequencyIndex#rank(WordCounter)
+     */
+    static void exportTfIdf(WordCounter wordCounter, DocumentFrequencyIndex index, Writer out, Format format)
+            throws IOException {
+        List<Map.Entry<String, Double>> ranked = index.rank(wordCounter);
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(ranked.size());
+        double[] scores = new double[ranked.size()];
+        for (int i = 0; i < scores.length; i++) {
+            String word = ranked.get(i).getKey();
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(word, wordCounter.tally.wordMap.get(word)));
+            scores[i] = ranked.get(i).getValue();
+        }
+        new KeywordExporter(out).write(entries, scores, format, "keyword", wordCounter.tally.maxWordLen,
+                wordCounter.maxWordCountDigits);
+    }
+
+    /**
+     * Writes every phrase counted by a WordCounter, from the highest count to the lowest, in the same layout as the
+     * keywords. Doesn't close the Writer.
+     * @param wordCounter results to write, which must have counted phrases for there to be any
+     * @param out Writer to write to
+     * @param format format to write in
+     * @see ScanOptions#phrases(int)
+     */
+    static void exportPhrases(WordCounter wordCounter, Writer out, Format format) throws IOException {
+        List<Map.Entry<String, Long>> phrases = wordCounter.getPhraseList();
+        int phraseWidth = 0;
+        for (Map.Entry<String, Long> entry : phrases) phraseWidth = Math.max(phraseWidth, entry.getKey().length());
+        new KeywordExporter(out).write(phrases, null, format, "phrase", phraseWidth,
+                phrases.isEmpty() ? 0 : digits(phrases.get(0).getValue()));
+    }
+
+    /**
+     * @param out Writer to write to
+     */
+    private KeywordExporter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the entries in the given format, then hands whatever is left in the buffer to the Writer.
+     * @param entries keywords and counts, in the order to write them
+     * @param scores TF-IDF score of each entry, written after its count, or null to write only counts
+     * @param format format to write in
+     * @param field what the entries are, which names the first column or JSON field
+     * @param wordWidth width to pad keywords to in the text format
+     * @param countWidth width to pad counts to in the text format
+     */
+    private void write(List<Map.Entry<String, Long>> entries, double[] scores, Format format, String field,
+                       int wordWidth, int countWidth) throws IOException {
+        if (format == Format.CSV) put(field + ",count" + (scores == null ? "" : ",tfidf") + LINE_SEPARATOR);
+        else if (format == Format.TSV) put(field + "\tcount" + (scores == null ? "" : "\ttfidf") + LINE_SEPARATOR);
+        int scoreWidth = 0; // width to pad scores to in the text format
+        if (scores != null) for (double score : scores) scoreWidth = Math.max(scoreWidth, scoreDigits(score));
+
+        for (int i = 0, n = entries.size(); i < n; i++) {
+            String word = entries.get(i).getKey();
+            long count = entries.get(i).getValue();
+            switch (format) {
+                case TEXT -> {
+                    // the table has no line separator after its last line
+                    if (i > 0) put(LINE_SEPARATOR);
+                    putSpaces(wordWidth - word.length());
+                    put(word);
+                    putSpaces(3);
+                    putSpaces(countWidth - digits(count));
+                    putNumber(count);
+                    if (scores != null) {
+                        putSpaces(3);
+                        putSpaces(scoreWidth - scoreDigits(scores[i]));
+                        putScore(scores[i]);
+                    }
+                }
+                case CSV -> {
+                    putCsv(word);
+                    put(',');
+                    putNumber(count);
+                    if (scores != null) {
+                        put(',');
+                        putScore(scores[i]);
+                    }
+                    put(LINE_SEPARATOR);
+                }
+                case TSV -> {
+                    put(word);
+                    put('\t');
+                    putNumber(count);
+                    if (scores != null) {
+                        put('\t');
+                        putScore(scores[i]);
+                    }
+                    put(LINE_SEPARATOR);
+                }
+                case JSON -> {
+                    put("{\"" + field + "\":\"");
+                    putJson(word);
+                    put("\",\"count\":");
+                    putNumber(count);
+                    if (scores != null) {
+                        put(",\"tfidf\":");
+                        putScore(scores[i]);
+                    }
+                    put('}');
+                    put(LINE_SEPARATOR);
+                }
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Writes a CSV field, quoting it if it holds a comma, a quote or a line break.
+     */
+    private void putCsv(String field) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < field.length() && !quote; i++) {
+            char c = field.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            put(field);
+            return;
+        }
+        put('"');
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '"') put('"'); // quotes are escaped by doubling them
+            put(c);
+        }
+        put('"');
+    }
+
+    /**
+     * Writes the contents of a JSON string, escaping quotes, backslashes and control characters.
+     */
+    private void putJson(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                put('\\');
+                put(c);
+            } else if (c < 0x20) {
+                put("\\u00");
+                put(Character.forDigit(c >> 4, 16));
+                put(Character.forDigit(c & 0xF, 16));
+            } else put(c);
+        }
+    }
+
+    /**
+     * Writes a non-negative number in decimal, filling in the digits from the last one back.
+     */
+    private void putNumber(long value) throws IOException {
+        int digits = digits(value);
+        if (BUFFER_SIZE - len < digits) flush();
+        for (int i = len + digits - 1; i >= len; i--) {
+            buf[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        len += digits;
+    }
+
+    /**
+     * Writes a non-negative score rounded to {@link #SCORE_DECIMALS} decimal places, keeping any trailing zeros so
+     * that the scores line up.
+     */
+    private void putScore(double score) throws IOException {
+        long scaled = Math.round(score * SCORE_SCALE);
+        putNumber(scaled / SCORE_SCALE);
+        put('.');
+        long fraction = scaled % SCORE_SCALE;
+        for (int i = digits(fraction); i < SCORE_DECIMALS; i++) put('0');
+        putNumber(fraction);
+    }
+
+    /**
+     * @return the number of characters {@link #putScore(double)} writes for a score
+     */
+    private static int scoreDigits(double score) {
+        return digits(Math.round(score * SCORE_SCALE) / SCORE_SCALE) + 1 + SCORE_DECIMALS;
+    }
+
+    /**
+     * @return the number of decimal digits in a non-negative number, which is 1 for 0
+     */
+    static int digits(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private void putSpaces(int count) throws IOException {
+        for (int i = 0; i < count; i++) put(' ');
+    }
+
+    private void put(char c) throws IOException {
+        if (len == BUFFER_SIZE) flush();
+        buf[len++] = c;
+    }
+
+    /**
+     * Copies a String into the buffer, flushing it as often as needed for Strings that don't fit.
+     */
+    private void put(String s) throws IOException {
+        int off = 0, remaining = s.length();
+        while (remaining > 0) {
+            if (len == BUFFER_SIZE) flush();
+            int n = Math.min(remaining, BUFFER_SIZE - len);
+            s.getChars(off, off + n, buf, len);
+            len += n;
+            off += n;
+            remaining -= n;
+        }
+    }
+
+    /**
+     * Hands everything in the buffer to the Writer and empties it.
+     */
+    private void flush() throws IOException {
+        out.write(buf, 0, len);
+        len = 0;
+    }
+}
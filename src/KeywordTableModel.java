@@ -0,0 +1,56 @@
+import javax.swing.table.AbstractTableModel;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Table model over a ranked list of keywords and their counts. Nothing is formatted ahead of time, so a
+ * {@link javax.swing.JTable} using this model only does work for the rows that are actually on screen.
+ */
+@SuppressWarnings("serial")
+public class KeywordTableModel extends AbstractTableModel {
+
+    static final int WORD_COLUMN = 0, COUNT_COLUMN = 1;
+
+    private final List<Map.Entry<String, Long>> entries; // keywords and their counts, in ranked order
+
+    /**
+     * @param entries keywords and their counts, in ranked order
+     */
+    public KeywordTableModel(List<Map.Entry<String, Long>> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * @param row index of a row in the model
+     * @return the keyword in that row
+     */
+    public String getWord(int row) {
+        return entries.get(row).getKey();
+    }
+
+    @Override
+    public int getRowCount() {
+        return entries.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return 2;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return column == WORD_COLUMN ? "Keyword" : "Count";
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == WORD_COLUMN ? String.class : Long.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Map.Entry<String, Long> entry = entries.get(row);
+        return column == WORD_COLUMN ? entry.getKey() : entry.getValue();
+    }
+}
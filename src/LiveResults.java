@@ -0,0 +1,229 @@
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * The counts of a scan that is still running, for showing results before it finishes. Instances never change once
+ * created, so they can be handed from the scanning threads to the Event Dispatch Thread without locking.
+ * <p>
+ * Each {@link WordTally} publishes its word totals and its most frequent keywords to its {@link ScanProgress} every so
+ * often, and {@link ScanProgress#getLiveResults()} combines what every tally last published with the number of
+ * characters scanned. The totals are exact as of each tally's last publication. The top keywords are taken from the
+ * {@link Candidates} that each tally keeps up as it counts, so that publishing never goes over the whole table on a
+ * scanning thread, and when a file is scanned in several chunks they are combined from the top of each chunk, so they
+ * can be slightly off until the scan finishes.
+ */
+public final class LiveResults {
+
+    static final int TOP_KEYWORDS = 10; // number of keywords shown while a scan is running
+    // number of keywords each tally publishes, more than are shown so that combining the chunks of a file is close
+    static final int PUBLISHED_KEYWORDS = TOP_KEYWORDS * 4;
+
+    final long characterCount; // number of characters scanned so far
+    final long totalWords; // number of words counted so far
+    final long totalKeywords; // number of keywords counted so far
+    final long totalStopWords; // number of stop words counted so far
+    final List<Map.Entry<String, Long>> topKeywords; // most frequent keywords so far, in ranked order
+
+    /**
+     * Takes the current counts of a tally, looking up the counts of its candidates rather than going over its whole
+     * table. Must be called on the thread filling the tally.
+     * @param tally WordTally to take the counts of
+     * @return the LiveResults of the tally, leaving out the number of characters, which the tally only learns at the
+     * end of each part it scans
+     */
+    static LiveResults of(WordTally tally) {
+        List<Map.Entry<String, Long>> top = tally.candidates == null ? List.of()
+                : tally.candidates.rank(tally.wordMap::get);
+        return new LiveResults(0, tally.totalWords, tally.totalKeywords, tally.totalStopWords, top);
+    }
+
+    /**
+     * Takes the top keywords of a table that several tallies count into, such as a {@link ConcurrentWordCountTable},
+     * whose totals are published by the tallies themselves.
+     * @param topKeywords most frequent keywords of the table, in ranked order
+     * @return LiveResults holding the keywords and no totals
+     */
+    static LiveResults of(List<Map.Entry<String, Long>> topKeywords) {
+        return new LiveResults(0, 0, 0, 0, List.copyOf(topKeywords));
+    }
+
+    /**
+     * Adds up the results published by several tallies.
+     * @param parts results to add up
+     * @param characterCount number of characters scanned so far, which is tracked by {@link ScanProgress} rather than
+     *                       by the tallies
+     * @return the combined LiveResults, holding the {@link #TOP_KEYWORDS} most frequent keywords
+     */
+    static LiveResults combine(Collection<LiveResults> parts, long characterCount) {
+        long totalWords = 0, totalKeywords = 0, totalStopWords = 0;
+        Map<String, Long> counts = new HashMap<>();
+        for (LiveResults part : parts) {
+            totalWords += part.totalWords;
+            totalKeywords += part.totalKeywords;
+            totalStopWords += part.totalStopWords;
+            for (Map.Entry<String, Long> entry : part.topKeywords) {
+                counts.merge(entry.getKey(), entry.getValue(), Long::sum);
+            }
+        }
+
+        List<Map.Entry<String, Long>> ranked = new ArrayList<>(counts.entrySet());
+        ranked.sort(WordCountTable.RANK_ORDER);
+        List<Map.Entry<String, Long>> top = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : ranked.subList(0, Math.min(TOP_KEYWORDS, ranked.size()))) {
+            top.add(Map.entry(entry.getKey(), entry.getValue()));
+        }
+        return new LiveResults(characterCount, totalWords, totalKeywords, totalStopWords, List.copyOf(top));
+    }
+
+    public long getTotalChars() {
+        return characterCount;
+    }
+
+    public long getTotalWords() {
+        return totalWords;
+    }
+
+    public long getTotalKeywords() {
+        return totalKeywords;
+    }
+
+    public long getTotalStopWords() {
+        return totalStopWords;
+    }
+
+    /**
+     * @return the most frequent keywords so far and their counts, from the highest count to the lowest
+     */
+    public List<Map.Entry<String, Long>> getTopKeywords() {
+        return topKeywords;
+    }
+
+    /**
+     * The keywords of a table that are likely to be among its most frequent, kept up as words are counted so that
+     * publishing only has to look up their counts. A keyword is looked at when its new count is above the lowest of the
+     * candidates', but once past {@link #STRIDE} only when its count is a multiple of STRIDE, so that the most frequent
+     * keywords don't search the candidates every time they are seen. A keyword that has only just overtaken the
+     * candidates can be missed until its count reaches the next multiple, but the counts published are always exact.
+     * <p>
+     * The candidates are looked at and changed under their own lock, so the tallies of a {@link ParallelScanner}
+     * counting into a shared table can share one set of them. The lowest count is read without locking, so the lock is
+     * only taken for the rare keyword that may become a candidate.
+     */
+    static final class Candidates {
+
+        static final int STRIDE = 1 << 4; // a keyword past this count is looked at every STRIDE times it is counted
+
+        private final String[] words = new String[PUBLISHED_KEYWORDS];
+        private final int[] hashes = new int[PUBLISHED_KEYWORDS]; // String.hashCode() of each candidate
+        private final long[] counts = new long[PUBLISHED_KEYWORDS]; // count of each candidate when last looked at
+        private int size = 0; // number of candidates
+        private int lowest = 0; // index of the candidate with the lowest count
+        // lowest count of any candidate once there are PUBLISHED_KEYWORDS of them, or 0 until then
+        private volatile long floor = 0;
+
+        /**
+         * Looks at a keyword whose count has just gone up by one, straight from the tokenizer's buffer.
+         * @param buf buffer holding the word
+         * @param off index of the first character of the word
+         * @param len number of characters in the word
+         * @param count new count of the word
+         */
+        void counted(char[] buf, int off, int len, long count) {
+            if (count <= floor || count >= STRIDE && (count & (STRIDE - 1)) != 0) return;
+            int hash = 0; // the same as String.hashCode() of the word
+            for (int i = off, end = off + len; i < end; i++) hash = 31 * hash + buf[i];
+            offer(hash, buf, off, len, null, count);
+        }
+
+        /**
+         * Looks at a keyword whose count has just gone up by any amount, such as when a tally's counts are added to a
+         * shared table.
+         * @param word the word
+         * @param count new count of the word
+         */
+        void counted(String word, long count) {
+            if (count > floor) offer(word.hashCode(), null, 0, 0, word, count);
+        }
+
+        /**
+         * Looks at every candidate of another set, such as that of a tally that has been merged into this one's.
+         * @param other Candidates to add
+         * @param counts gives the count of a word in the merged table
+         */
+        void addAll(Candidates other, ToLongFunction<String> counts) {
+            String[] words;
+            synchronized (other) {
+                words = Arrays.copyOf(other.words, other.size);
+            }
+            for (String word : words) counted(word, counts.applyAsLong(word));
+        }
+
+        /**
+         * Looks up the current count of every candidate.
+         * @param counts gives the count of a word
+         * @return a new list of the candidates and their counts, ordered by {@link WordCountTable#RANK_ORDER}
+         */
+        synchronized List<Map.Entry<String, Long>> rank(ToLongFunction<String> counts) {
+            List<Map.Entry<String, Long>> ranked = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                this.counts[i] = counts.applyAsLong(words[i]);
+                ranked.add(new AbstractMap.SimpleImmutableEntry<>(words[i], this.counts[i]));
+            }
+            findLowest();
+            ranked.sort(WordCountTable.RANK_ORDER);
+            return List.copyOf(ranked);
+        }
+
+        /**
+         * Updates the count of a keyword if it is a candidate, or makes it one in place of the lowest.
+         * @param word the word, or null to take it from the buffer if it has to be made a candidate
+         */
+        private synchronized void offer(int hash, char[] buf, int off, int len, String word, long count) {
+            if (count <= floor) return; // another thread may have raised it
+            for (int i = 0; i < size; i++) {
+                if (hashes[i] == hash
+                        && (word != null ? words[i].equals(word) : WordCountTable.matches(words[i], buf, off, len))) {
+                    counts[i] = count;
+                    if (i == lowest) findLowest();
+                    return;
+                }
+            }
+            int i = size < words.length ? size++ : lowest;
+            words[i] = word != null ? word : new String(buf, off, len);
+            hashes[i] = hash;
+            counts[i] = count;
+            findLowest();
+        }
+
+        /**
+         * Finds the candidate with the lowest count, which the next new candidate replaces.
+         */
+        private void findLowest() {
+            if (size < words.length) return;
+            for (int i = 0; i < size; i++) if (counts[i] < counts[lowest]) lowest = i;
+            floor = counts[lowest];
+        }
+    }
+
+    /**
+     * @param characterCount number of characters scanned so far
+     * @param totalWords number of words counted so far
+     * @param totalKeywords number of keywords counted so far
+     * @param totalStopWords number of stop words counted so far
+     * @param topKeywords most frequent keywords so far, in ranked order
+     */
+    private LiveResults(long characterCount, long totalWords, long totalKeywords, long totalStopWords,
+                        List<Map.Entry<String, Long>> topKeywords) {
+        this.characterCount = characterCount;
+        this.totalWords = totalWords;
+        this.totalKeywords = totalKeywords;
+        this.totalStopWords = totalStopWords;
+        this.topKeywords = topKeywords;
+    }
+}
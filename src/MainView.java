@@ -3,6 +3,11 @@ import javax.swing.border.TitledBorder;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 public class MainView extends JFrame {
 
@@ -13,16 +18,31 @@ public class MainView extends JFrame {
 
     public static int WIDTH, HEIGHT; // width and height of the frame
     static final String TEXT_VIEW_KEY = ":)"; // "key" for retrieving the panel containing keyword counts using CardLayout
+    static final String PROGRESS_VIEW_KEY = ":|"; // "key" for retrieving the panel shown while a scan is running
+    static final int PROGRESS_REFRESH_MS = 200; // how often the progress panel is updated during a scan
+    static final int LIVE_RESULTS_REFRESH_MS = 500; // how often each scanning thread publishes its counts
+    static final String SNAPSHOT_FORMAT = "Snapshot"; // label of the binary snapshot format in the save dialog
     JPanel mainMenu,
-            textView = new JPanel(); // the two JPanels used within the CardLayout
+            textView = new JPanel(), // the two JPanels used within the CardLayout
+            progressView = new JPanel(); // shown in between the other two while the scan is running
+    JProgressBar progressBar; // shows how much of the target file has been scanned
+    JLabel progressLbl; // shows the number of bytes scanned and the scanning speed
+    JTextArea liveTop10Area; // shows the most frequent keywords found so far while a scan is running
+    JLabel[] liveStatLbls; // show the totals counted so far while a scan is running
+    ScanProgress scanProgress; // progress of the scan currently running, if any
+    SwingWorker<WordCounter, Void> scanWorker; // runs the scan off of the Event Dispatch Thread
     JButton draculaBtn, chooseTextFileBtn, defaultStopBtn, chooseStopBtn; // buttons on the main menu
     ButtonGroup scanFileBtns, stopFileBtns; // for controlling the buttons above
-    public static final File DRACULA = new File(System.getProperty("user.dir") + "//sample//dracula.txt"), // default target file
-            STOP_WORDS = new File(System.getProperty("user.dir") + "//stop//stopwords.txt"); // default stop word file
+    JCheckBox checkpointChk; // whether scans save checkpoints, so that a file that grows is only scanned from there
+    public static final File DRACULA = WordCounter.DRACULA, // default target file
+            STOP_WORDS = StopFilter.DEFAULT_STOP_WORDS; // default stop word file
     File targetFile, stopFile; // store the user's choice of target and stop files
     JScrollPane scanFileArea, stopFileArea; // these appear on the main menu, showing the names of the files chosen by the user
     StopFilter stopFilter;
     WordCounter wordCounter;
+    // results of earlier scans, so that opening the same document again doesn't scan it again
+    final ResultCache resultCache = ResultCache.createResultCache(ResultCache.DEFAULT_DIRECTORY,
+            ResultCache.DEFAULT_MAX_BYTES);
     TitledBorder frameBorder; // border on the JFrame
 
     private MainView() {
@@ -63,33 +83,139 @@ public class MainView extends JFrame {
         getContentPane().setLayout(new CardLayout());
         add(mainMenu, "");
         add(textView, TEXT_VIEW_KEY);
+        add(progressView, PROGRESS_VIEW_KEY);
     }
 
     /**
-     * Switches from the main menu to the screen for showing keywords.
+     * Switches from the main menu to the screen for showing keywords. The scan runs on a background thread, and a
+     * progress panel with a cancel button is shown until it finishes.
      */
     private void showKeywords() {
         if (scanFileBtns.getSelection() == null || stopFileBtns.getSelection() == null) return;
+        if (scanWorker != null) return; // a scan is already running
 
-        // initializes StopFilter and WordCounter instances, passing in their respective files as parameters
-        try {
-            stopFilter = StopFilter.createStopFilter(stopFile);
-            wordCounter = WordCounter.createWordCounter(targetFile, stopFilter);
-        } catch (FileNotFoundException e) {
-            throw new RuntimeException(e);
-        }
+        File target = targetFile, stop = stopFile;
+        File checkpoints = checkpointChk.isSelected() ? ScanCheckpoint.DEFAULT_DIRECTORY : null;
+        ScanProgress progress = scanProgress = new ScanProgress();
+        progress.showLiveResults(LIVE_RESULTS_REFRESH_MS);
 
         // changes the TitledBorder to show the file name
-        frameBorder.setTitle("Extracting tags from " + targetFile.toString());
+        frameBorder.setTitle("Extracting tags from " + target.toString());
         frameBorder.setTitlePosition(TitledBorder.BELOW_TOP);
         frameBorder.setTitleColor(Color.LIGHT_GRAY);
         frameBorder.setTitleFont(GUI_Util.TINY_ITAL);
         getRootPane().setBorder(BorderFactory.createCompoundBorder(BorderFactory.createEmptyBorder
                 (50, 50, 50, 50), frameBorder));
 
-        // finishes creating the second panel and shows it
-        createWordCountView(wordCounter);
-        ((CardLayout) getContentPane().getLayout()).show(getContentPane(), TEXT_VIEW_KEY);
+        createProgressView();
+        ((CardLayout) getContentPane().getLayout()).show(getContentPane(), PROGRESS_VIEW_KEY);
+        Timer progressTimer = new Timer(PROGRESS_REFRESH_MS, e -> updateProgressView(progress));
+
+        scanWorker = new SwingWorker<>() {
+            @Override
+            protected WordCounter doInBackground() throws FileNotFoundException {
+                // initializes StopFilter and WordCounter instances, passing in their respective files as parameters
+                stopFilter = StopFilter.createStopFilter(stop);
+                return WordCounter.createWordCounter(target, stopFilter, new ScanOptions()
+                        .checkpointDirectory(checkpoints).resultCache(resultCache), progress);
+            }
+
+            @Override
+            protected void done() {
+                progressTimer.stop();
+                scanWorker = null;
+                try {
+                    wordCounter = get();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    // goes back to the main menu, telling the user what went wrong unless they canceled the scan
+                    if (!(e.getCause() instanceof CancellationException)) {
+                        JOptionPane.showMessageDialog(null, "Error: " + e.getCause().getMessage(),
+                                "Error", JOptionPane.PLAIN_MESSAGE);
+                    }
+                    showMainMenu();
+                    return;
+                }
+
+                // finishes creating the second panel and shows it
+                showWordCountView(wordCounter);
+            }
+        };
+        progressTimer.start();
+        scanWorker.execute();
+    }
+
+    /**
+     * Goes back to the main menu, putting the frame's border back to how it was at startup.
+     */
+    private void showMainMenu() {
+        frameBorder.setTitle("Tag Extractor");
+        frameBorder.setTitlePosition(TitledBorder.DEFAULT_POSITION);
+        frameBorder.setTitleColor(Color.WHITE);
+        frameBorder.setTitleFont(GUI_Util.BIG_BOLD);
+        getRootPane().setBorder(BorderFactory.createCompoundBorder(BorderFactory.createEmptyBorder
+                (50, 50, 50, 50), frameBorder));
+        ((CardLayout) getContentPane().getLayout()).show(getContentPane(), "");
+    }
+
+    /**
+     * Sets up the panel shown while a scan is running, with a progress bar, a label for the scanning speed, a button
+     * for canceling the scan, and the top 10 keywords and totals counted so far, so that the user can cancel once
+     * they have seen enough.
+     */
+    private void createProgressView() {
+        progressView.removeAll();
+        progressView.setOpaque(false);
+        progressView.setLayout(new BoxLayout(progressView, BoxLayout.Y_AXIS));
+
+        progressBar = new JProgressBar(0, 1000);
+        progressBar.setStringPainted(true);
+        progressBar.setFont(GUI_Util.SMALL_BOLD);
+        progressLbl = GUI_Util.createLabel(" ", GUI_Util.SMALL_PLAIN);
+        JButton cancelBtn = GUI_Util.createMenuButton("Cancel", e -> scanProgress.cancel());
+
+        JPanel pnl = GUI_Util.createTitledPanel("Scanning");
+        pnl.add(progressBar);
+        pnl.add(Box.createVerticalStrut(20));
+        pnl.add(GUI_Util.createHorizontalBox(progressLbl));
+        pnl.add(Box.createVerticalStrut(20));
+        pnl.add(GUI_Util.createHorizontalBox(cancelBtn));
+
+        liveTop10Area = WordCountView.createTop10Area();
+        liveStatLbls = createStatLabels(0, 0, 0, 0);
+        Box liveBox = Box.createHorizontalBox();
+        liveBox.add(Box.createHorizontalGlue());
+        liveBox.add(WordCountView.createTop10Panel(liveTop10Area));
+        liveBox.add(Box.createHorizontalStrut(20));
+        liveBox.add(GUI_Util.createVerticalBox(createStatsPanel(liveStatLbls)));
+        liveBox.add(Box.createHorizontalGlue());
+
+        progressView.add(Box.createVerticalGlue());
+        progressView.add(GUI_Util.createHorizontalBox(pnl));
+        progressView.add(Box.createVerticalStrut(20));
+        progressView.add(liveBox);
+        progressView.add(Box.createVerticalGlue());
+        progressView.revalidate();
+    }
+
+    /**
+     * Updates the progress panel with the latest numbers from the scan, including the counts the scanning threads
+     * have published so far. Called periodically by a Swing Timer.
+     * @param progress ScanProgress of the scan currently running
+     */
+    private void updateProgressView(ScanProgress progress) {
+        long done = progress.getBytesProcessed(), total = Math.max(1, progress.getTotalBytes());
+        progressBar.setValue((int) (done * 1000 / total));
+        progressBar.setString(String.format("%.1f%%", done * 100.0 / total));
+        progressLbl.setText(String.format("%,.1f MB of %,.1f MB   %,.0f words/s", done / 1e6,
+                progress.getTotalBytes() / 1e6, progress.getWordsPerSecond()));
+
+        LiveResults live = progress.getLiveResults();
+        WordCountView.showTop10(liveTop10Area, live.getTopKeywords());
+        long[] totals = {live.getTotalChars(), live.getTotalWords(), live.getTotalKeywords(),
+                live.getTotalStopWords()};
+        for (int i = 0; i < totals.length; i++) liveStatLbls[i].setText(String.valueOf(totals[i]));
     }
 
     /**
@@ -199,7 +325,44 @@ public class MainView extends JFrame {
     }
 
     /**
-     * Saves the list of keywords and their respective counts to a text file.
+     * Opens a JFileChooser window for the user to select a snapshot saved earlier, then shows the results it holds
+     * without scanning anything.
+     */
+    private void openSnapshot() {
+        if (scanWorker != null) return; // a scan is already running
+
+        JFileChooser jfc = new JFileChooser();
+        // sets the directory to "documents" by default
+        jfc.setCurrentDirectory(new File(System.getProperty("user.home") + "//documents//"));
+        jfc.setFileSelectionMode(JFileChooser.FILES_ONLY);
+        jfc.addChoosableFileFilter(new FileNameExtensionFilter("*." + ResultSnapshot.EXTENSION,
+                ResultSnapshot.EXTENSION));
+        jfc.setAcceptAllFileFilterUsed(false);
+        jfc.setDialogTitle("Results to open");
+        if (jfc.showOpenDialog(null) != JFileChooser.APPROVE_OPTION) return;
+
+        File snapshot = jfc.getSelectedFile();
+        try {
+            wordCounter = WordCounter.loadSnapshot(snapshot);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null, "Error: " + e.getMessage(), "Error",
+                    JOptionPane.PLAIN_MESSAGE);
+            return;
+        }
+
+        // changes the TitledBorder to show the file name
+        frameBorder.setTitle("Tags saved in " + snapshot);
+        frameBorder.setTitlePosition(TitledBorder.BELOW_TOP);
+        frameBorder.setTitleColor(Color.LIGHT_GRAY);
+        frameBorder.setTitleFont(GUI_Util.TINY_ITAL);
+        getRootPane().setBorder(BorderFactory.createCompoundBorder(BorderFactory.createEmptyBorder
+                (50, 50, 50, 50), frameBorder));
+
+        showWordCountView(wordCounter);
+    }
+
+    /**
+     * Saves the list of keywords and their respective counts, either as a text file or as a binary snapshot.
      */
     private void save() {
         boolean isIllegalName;
@@ -253,6 +416,23 @@ public class MainView extends JFrame {
             }
         } while (isIllegalName);
 
+        // asks which format to save in: an export format, or a binary snapshot that can be opened again later
+        List<String> formats = new ArrayList<>();
+        for (KeywordExporter.Format exportFormat : KeywordExporter.Format.values()) formats.add(exportFormat.label);
+        formats.add(SNAPSHOT_FORMAT);
+        String format = (String) JOptionPane.showInputDialog(null, "Format:", "Save",
+                JOptionPane.PLAIN_MESSAGE, null, formats.toArray(), formats.get(0));
+        if (format == null) {
+            JOptionPane.showMessageDialog(null, "Save canceled.", "Save",
+                    JOptionPane.PLAIN_MESSAGE);
+            return;
+        }
+        boolean snapshot = format.equals(SNAPSHOT_FORMAT);
+        KeywordExporter.Format exportFormat = null;
+        for (KeywordExporter.Format candidate : KeywordExporter.Format.values()) {
+            if (candidate.label.equals(format)) exportFormat = candidate;
+        }
+
         // shows a JFileChooser window for the user to pick a directory to save the file in
         JFileChooser jfc = new JFileChooser();
         jfc.setDialogTitle("Save");
@@ -261,15 +441,19 @@ public class MainView extends JFrame {
 
         if (jfc.showOpenDialog(null) == JFileChooser.APPROVE_OPTION) {
             File dir = jfc.getSelectedFile(),
-                    data = new File(dir, fileName + ".txt");
+                    data = new File(dir, fileName + "."
+                            + (snapshot ? ResultSnapshot.EXTENSION : exportFormat.extension));
 
             try {
-                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new BufferedOutputStream
-                        (new FileOutputStream(data))));
-
-                // writes the file using a method in WordCounter
-                wordCounter.writeFile(writer);
-                writer.close();
+                if (snapshot) wordCounter.writeSnapshot(data);
+                else {
+                    Writer writer = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(data)),
+                            StandardCharsets.UTF_8);
+
+                    // writes the file using a method in WordCounter
+                    wordCounter.export(writer, exportFormat);
+                    writer.close();
+                }
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
@@ -279,6 +463,23 @@ public class MainView extends JFrame {
         }
     }
 
+    /**
+     * Shows the results of a scan or snapshot. If there isn't a single keyword to show, such as for an empty file or
+     * one of nothing but stop words, tells the user so and goes back to the main menu instead.
+     * @param wordCounter instance of {@link WordCounter} to get keywords and counts from
+     */
+    private void showWordCountView(WordCounter wordCounter) {
+        if (wordCounter.tally.wordMap.size() == 0) {
+            JOptionPane.showMessageDialog(null, "No keywords were found.", "Tag Extractor",
+                    JOptionPane.PLAIN_MESSAGE);
+            showMainMenu();
+            return;
+        }
+
+        createWordCountView(wordCounter);
+        ((CardLayout) getContentPane().getLayout()).show(getContentPane(), TEXT_VIEW_KEY);
+    }
+
     /**
      * Uses {@link #wordCounter} to perform a scan on the target ile and sets up the JPanel used to show scan results.
      * @param wordCounter instance of {@link WordCounter} to get keywords and counts from
@@ -288,31 +489,11 @@ public class MainView extends JFrame {
         textView.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
         textView.setLayout(new BoxLayout(textView, BoxLayout.X_AXIS));
 
-        JPanel top10Pnl = wordCounter.createTop10View();
-        JScrollPane fullListPnl = wordCounter.createFullListView();
+        JPanel top10Pnl = WordCountView.createTop10View(wordCounter);
+        JPanel fullListPnl = WordCountView.createFullListView(wordCounter);
 
-        JPanel statsPnl = new JPanel();
-        statsPnl.setOpaque(false);
-        TitledBorder statsPnlBorder = BorderFactory.createTitledBorder(BorderFactory.createLineBorder
-                (Color.LIGHT_GRAY,2, true), "Stats", TitledBorder.RIGHT,
-                TitledBorder.TOP);
-        statsPnlBorder.setTitleColor(Color.WHITE);
-        statsPnlBorder.setTitleFont(GUI_Util.MED_BOLD);
-        statsPnl.setBorder(BorderFactory.createCompoundBorder(statsPnlBorder,
-                BorderFactory.createEmptyBorder(10, 10, 10, 10)));
-        statsPnl.setLayout(new BoxLayout(statsPnl, BoxLayout.X_AXIS));
-
-        Box leftStats = GUI_Util.createVerticalBox(GUI_Util.createLabel("Total characters: ", GUI_Util.SMALL_BOLD),
-                GUI_Util.createLabel("Total words: ", GUI_Util.SMALL_BOLD),
-                GUI_Util.createLabel("Total keywords: ", GUI_Util.SMALL_BOLD),
-                GUI_Util.createLabel("Total stopwords: ", GUI_Util.SMALL_BOLD));
-        Box rightStats = GUI_Util.createVerticalBox(GUI_Util.createLabel(String.valueOf(wordCounter.getTotalChars()),
-                        GUI_Util.SMALL_PLAIN),
-                GUI_Util.createLabel(String.valueOf(wordCounter.getTotalWords()), GUI_Util.SMALL_PLAIN),
-                GUI_Util.createLabel(String.valueOf(wordCounter.getTotalKeywords()), GUI_Util.SMALL_PLAIN),
-                GUI_Util.createLabel(String.valueOf(wordCounter.getTotalStopWords()), GUI_Util.SMALL_PLAIN));
-        statsPnl.add(leftStats);
-        statsPnl.add(rightStats);
+        JPanel statsPnl = createStatsPanel(createStatLabels(wordCounter.getTotalChars(), wordCounter.getTotalWords(),
+                wordCounter.getTotalKeywords(), wordCounter.getTotalStopWords()));
 
         JButton saveBtn = GUI_Util.createMenuButton("Save", e -> save());
         Box btnBox = Box.createHorizontalBox();
@@ -334,6 +515,45 @@ public class MainView extends JFrame {
         textView.add(Box.createHorizontalGlue());
     }
 
+    /**
+     * Creates the panel showing the totals of a scan.
+     * @param values labels showing the total characters, words, keywords and stop words, in that order
+     * @return JPanel
+     */
+    private static JPanel createStatsPanel(JLabel[] values) {
+        JPanel statsPnl = new JPanel();
+        statsPnl.setOpaque(false);
+        TitledBorder statsPnlBorder = BorderFactory.createTitledBorder(BorderFactory.createLineBorder
+                (Color.LIGHT_GRAY,2, true), "Stats", TitledBorder.RIGHT,
+                TitledBorder.TOP);
+        statsPnlBorder.setTitleColor(Color.WHITE);
+        statsPnlBorder.setTitleFont(GUI_Util.MED_BOLD);
+        statsPnl.setBorder(BorderFactory.createCompoundBorder(statsPnlBorder,
+                BorderFactory.createEmptyBorder(10, 10, 10, 10)));
+        statsPnl.setLayout(new BoxLayout(statsPnl, BoxLayout.X_AXIS));
+
+        Box leftStats = GUI_Util.createVerticalBox(GUI_Util.createLabel("Total characters: ", GUI_Util.SMALL_BOLD),
+                GUI_Util.createLabel("Total words: ", GUI_Util.SMALL_BOLD),
+                GUI_Util.createLabel("Total keywords: ", GUI_Util.SMALL_BOLD),
+                GUI_Util.createLabel("Total stopwords: ", GUI_Util.SMALL_BOLD));
+        Box rightStats = GUI_Util.createVerticalBox(values[0], values[1], values[2], values[3]);
+        statsPnl.add(leftStats);
+        statsPnl.add(rightStats);
+        return statsPnl;
+    }
+
+    /**
+     * @param totals numbers to show
+     * @return a label for each number
+     */
+    private static JLabel[] createStatLabels(long... totals) {
+        JLabel[] labels = new JLabel[totals.length];
+        for (int i = 0; i < totals.length; i++) {
+            labels[i] = GUI_Util.createLabel(String.valueOf(totals[i]), GUI_Util.SMALL_PLAIN);
+        }
+        return labels;
+    }
+
     /**
      * Sets up the main menu.
      */
@@ -360,14 +580,16 @@ public class MainView extends JFrame {
         fileNamePnl.add(stopFileArea);
 
         JButton goBtn = GUI_Util.createMenuButton("Go!", e -> showKeywords());
+        JButton openBtn = GUI_Util.createMenuButton("Open results", e -> openSnapshot());
         goBtnPnl.setOpaque(false);
-        goBtnPnl.add(Box.createHorizontalStrut(WIDTH * 3 / 4));
+        goBtnPnl.add(Box.createHorizontalStrut(WIDTH / 2));
+        goBtnPnl.add(openBtn);
         goBtnPnl.add(goBtn);
 
         JPanel bottomPnl = new JPanel(new GridLayout(3, 1));
         bottomPnl.setOpaque(false);
         bottomPnl.add(fileNamePnl);
-        bottomPnl.add(Box.createVerticalBox());
+        bottomPnl.add(GUI_Util.createVerticalBox(GUI_Util.createHorizontalBox(checkpointChk)));
         bottomPnl.add(goBtnPnl);
 
         mainMenu = new JPanel(new GridLayout(2, 1));
@@ -398,5 +620,11 @@ public class MainView extends JFrame {
 
         scanFileArea = GUI_Util.createGrayedOutTextArea();
         stopFileArea = GUI_Util.createGrayedOutTextArea();
+
+        // off by default, since checkpoints keep a copy of each scanned file's counts on disk
+        checkpointChk = new JCheckBox("Only scan what has been added to a file since it was last scanned");
+        checkpointChk.setFont(GUI_Util.SMALL_PLAIN);
+        checkpointChk.setForeground(Color.WHITE);
+        checkpointChk.setOpaque(false);
     }
 }
\ No newline at end of file
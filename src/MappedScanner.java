@@ -0,0 +1,269 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+import java.text.Normalizer;
+
+/**
+ * Scans a file by memory-mapping it rather than reading it through a stream. The file is walked in windows of at most
+ * {@link #WINDOW_SIZE} bytes, so files larger than 2 GB (or larger than memory) can be scanned. Words that cross the
+ * edge of a window are carried over by the {@link BlockTokenizer}, and a character split across the edge is decoded
+ * at the start of the next window.
+ * <p>
+ * When the charset encodes ASCII as single bytes (UTF-8, ISO-8859-1, windows-1252 and so on), ASCII bytes are
+ * tokenized straight from the mapped buffer, and only runs of other bytes go through the {@link CharsetDecoder}.
+ * UTF-8 and ISO-8859-1 files skip the {@link CharsetDecoder} entirely. UTF-8 is decoded by the tokenizer straight from
+ * the mapped bytes, and in ISO-8859-1 every byte is a character below 256 that the tokenizer can look up directly.
+ * Other charsets are decoded in full.
+ */
+public class MappedScanner {
+
+    static final long WINDOW_SIZE = 1L << 28; // largest number of bytes mapped at once
+    static final int SLICE_SIZE = 1 << 20; // number of bytes scanned between progress reports
+    static final int CHAR_BUFFER_SIZE = 1 << 14; // size of the buffer that decoded characters are written into
+
+    private final CharsetDecoder decoder;
+    private final boolean asciiCompatible; // whether ASCII bytes can be read as characters without decoding
+    private final boolean utf8; // whether the bytes are decoded by the tokenizer rather than the CharsetDecoder
+    private final boolean latin1; // whether every byte can be read as a character without decoding
+    private final BlockTokenizer tokenizer;
+    private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+    private final ScanProgress progress; // for reporting bytes scanned, and checking whether to stop
+
+    long position; // byte offset of the first byte that has not been decoded yet
+    ScanCheckpoint.Fingerprint fingerprint; // hash that the bytes scanned are added to, or null if there isn't one
+
+    /**
+     * @param charset charset the file is encoded in
+     */
+    public MappedScanner(Charset charset) {
+        this(charset, new ScanProgress());
+    }
+
+    /**
+     * @param charset charset the file is encoded in
+     * @param progress ScanProgress to report the bytes scanned to
+     */
+    public MappedScanner(Charset charset, ScanProgress progress) {
+        this(charset, progress, BlockTokenizer.CaseFolding.LOWER, null);
+    }
+
+    /**
+     * @param charset charset the file is encoded in
+     * @param progress ScanProgress to report the bytes scanned to
+     * @param folding how letters are folded
+     * @param normalization Unicode normalization form that words are put into, or null to leave them as they are
+     */
+    public MappedScanner(Charset charset, ScanProgress progress, BlockTokenizer.CaseFolding folding,
+                         Normalizer.Form normalization) {
+        this.progress = progress;
+        tokenizer = new BlockTokenizer(folding, normalization);
+        // replaces bad input the same way that InputStreamReader does, so that the character counts match
+        decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        asciiCompatible = isAsciiCompatible(charset);
+        utf8 = charset.equals(StandardCharsets.UTF_8);
+        latin1 = charset.equals(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Decodes and discards characters from the file, for skipping over a header.
+     * @param channel file to read
+     * @param start byte offset to start skipping from
+     * @param count number of characters to skip
+     * @return byte offset of the first character after the ones skipped
+     */
+    public long skip(FileChannel channel, long start, long count) throws IOException {
+        long size = channel.size();
+        position = start;
+        decoder.reset();
+        while (count > 0 && position < size) {
+            long windowSize = Math.min(WINDOW_SIZE, size - position);
+            ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+            boolean last = position + windowSize == size;
+
+            while (count > 0 && window.hasRemaining()) {
+                chars.clear();
+                chars.limit((int) Math.min(count, chars.capacity()));
+                CoderResult result = decoder.decode(window, chars, last);
+                count -= chars.position();
+                if (result.isUnderflow()) break;
+            }
+            if (window.position() == 0) break; // nothing left that can be decoded
+            position += window.position();
+        }
+        decoder.reset();
+        return position;
+    }
+
+    /**
+     * Scans part of a file that ends the input, decoding any partial character at the end of the range as malformed.
+     * @see #scan(FileChannel, long, long, TokenHandler, boolean)
+     */
+    public long scan(FileChannel channel, long start, long end, TokenHandler handler) throws IOException {
+        return scan(channel, start, end, handler, true);
+    }
+
+    /**
+     * Scans part of a file, passing every completed word to the handler. A word still unfinished at the end of the
+     * range is left in the tokenizer and not passed on.
+     * @param channel file to scan
+     * @param start byte offset to start scanning from
+     * @param end byte offset to stop scanning at
+     * @param handler TokenHandler to pass words to
+     * @param endOfInput whether the range ends the input. If not, a partial character at the end of the range is left
+     *                   undecoded, and {@link #position} is left pointing to its first byte
+     * @return the number of characters scanned
+     */
+    public long scan(FileChannel channel, long start, long end, TokenHandler handler, boolean endOfInput)
+            throws IOException {
+        long characterCount = 0;
+        position = start;
+        decoder.reset();
+        while (position < end) {
+            long windowSize = Math.min(WINDOW_SIZE, end - position);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+            boolean lastWindow = endOfInput && position + windowSize == end;
+
+            // scans the window a slice at a time, reporting progress after each one
+            int windowLimit = window.limit();
+            while (window.position() < windowLimit) {
+                int sliceStart = window.position();
+                window.limit(Math.min(windowLimit, sliceStart + SLICE_SIZE));
+                boolean last = lastWindow && window.limit() == windowLimit;
+
+                long sliceCharacters = scanBytes(window, last, handler);
+                characterCount += sliceCharacters;
+                if (fingerprint != null) {
+                    fingerprint.update(window.duplicate().position(sliceStart).limit(window.position()),
+                            position + sliceStart);
+                }
+
+                progress.addBytes(window.position() - sliceStart);
+                progress.addCharacters(sliceCharacters);
+                if (window.position() == sliceStart) break; // only a partial character is left in this window
+            }
+
+            if (window.position() == 0) break; // only a trailing partial character is left
+            position += window.position();
+        }
+        return characterCount;
+    }
+
+    /**
+     * Scans the bytes between a buffer's position and limit, continuing the word and any partial character left by the
+     * bytes scanned before them. Leaves the buffer's position after the last byte that was consumed, so that only a
+     * partial character at the end is left, unless the bytes end the input.
+     * @param bytes bytes to scan, which don't have to be mapped
+     * @param endOfInput whether no more bytes follow these ones
+     * @param handler TokenHandler to pass completed words to
+     * @return the number of characters scanned
+     */
+    int scanBytes(ByteBuffer bytes, boolean endOfInput, TokenHandler handler) {
+        if (latin1) {
+            int start = bytes.position();
+            tokenizer.scanLatin1(bytes, start, bytes.limit(), handler);
+            bytes.position(bytes.limit());
+            return bytes.limit() - start;
+        }
+        if (utf8) return tokenizer.scanUtf8(bytes, endOfInput, handler);
+        return asciiCompatible ? scanSliceAscii(bytes, endOfInput, handler) : decode(bytes, endOfInput, handler);
+    }
+
+    /**
+     * @return a copy of the word left unfinished at the end of the last range scanned
+     */
+    public char[] pendingWord() {
+        return tokenizer.pendingWord();
+    }
+
+    /**
+     * Sets the unfinished word that the next range scanned continues, for picking up a scan where an earlier one
+     * stopped.
+     * @param pending characters of the unfinished word, in lowercase
+     */
+    public void setPendingWord(char[] pending) {
+        tokenizer.setPendingWord(pending);
+    }
+
+    /**
+     * Scans the bytes between a window's position and limit, in an ASCII-compatible file. ASCII runs are tokenized
+     * directly, and runs of other bytes are decoded. Leaves the window's position after the last byte that was
+     * consumed.
+     * @return the number of characters scanned
+     */
+    private int scanSliceAscii(ByteBuffer window, boolean last, TokenHandler handler) {
+        int characterCount = 0;
+        int limit = window.limit();
+        int i = window.position();
+        while (i < limit) {
+            int stop = tokenizer.scanAscii(window, i, limit, handler);
+            characterCount += stop - i;
+            if (stop == limit) {
+                i = stop;
+                break;
+            }
+
+            // finds the end of the run of non-ASCII bytes
+            int runEnd = stop + 1;
+            while (runEnd < limit && window.get(runEnd) < 0) runEnd++;
+
+            /*
+            A run ended by an ASCII byte is complete, since ASCII bytes are never part of a longer sequence. A run that
+            reaches the edge of the slice may end with a partial character, which is left for the next slice.
+             */
+            boolean complete = runEnd < limit || last;
+            ByteBuffer run = window.slice(stop, runEnd - stop);
+            characterCount += decode(run, complete, handler);
+            decoder.reset();
+            i = stop + run.position();
+            if (i < runEnd) break;
+        }
+        window.position(i);
+        return characterCount;
+    }
+
+    /**
+     * Decodes bytes and passes the characters to the tokenizer.
+     * @param bytes bytes to decode, whose position is advanced past every byte consumed
+     * @param endOfInput whether no more bytes follow these ones
+     * @param handler TokenHandler to pass completed words to
+     * @return the number of characters decoded
+     */
+    private int decode(ByteBuffer bytes, boolean endOfInput, TokenHandler handler) {
+        int characterCount = 0;
+        CoderResult result;
+        do {
+            chars.clear();
+            result = decoder.decode(bytes, chars, endOfInput);
+            if (result.isUnderflow() && endOfInput) decoder.flush(chars);
+            tokenizer.scan(chars.array(), 0, chars.position(), handler);
+            characterCount += chars.position();
+        } while (result.isOverflow());
+        return characterCount;
+    }
+
+    /**
+     * Checks whether a charset encodes every ASCII character as the same single byte, and never uses bytes from the
+     * ASCII range inside the encoding of any other character.
+     * @param charset charset to check
+     * @return true if ASCII bytes can be read as characters without decoding
+     */
+    static boolean isAsciiCompatible(Charset charset) {
+        if (charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)
+                || charset.equals(StandardCharsets.ISO_8859_1)) return true;
+
+        // other single-byte charsets are compatible if they map the ASCII range onto itself
+        if (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1) return false;
+        byte[] ascii = new byte[128];
+        for (int i = 0; i < ascii.length; i++) ascii[i] = (byte) i;
+        String decoded = new String(ascii, charset);
+        for (int i = 0; i < ascii.length; i++) {
+            if (decoded.length() != ascii.length || decoded.charAt(i) != i) return false;
+        }
+        return true;
+    }
+}
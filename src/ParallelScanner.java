@@ -0,0 +1,261 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scans a memory-mapped file on several threads at once. The file is cut into chunks that each end just after an
+ * ASCII character that is not a letter, so that no word is split between two chunks. Each chunk is counted into its
+ * own {@link WordTally} on a {@link ForkJoinPool} worker, and the tallies are merged as the tasks complete.
+ * <p>
+ * With shared counts, the chunks count their keywords into one {@link ConcurrentWordCountTable} instead, each keeping
+ * only the last few thousand distinct keywords it has seen in its own tally before handing them over. The totals and
+ * phrases are still kept by each chunk and merged, and the shared counts are moved into the merged tally at the end.
+ * <p>
+ * Only works for charsets accepted by {@link MappedScanner#isAsciiCompatible(Charset)}, since in those an ASCII byte
+ * is always a whole character and the bytes on either side of it can be decoded separately.
+ */
+public class ParallelScanner {
+
+    static final long MIN_CHUNK_SIZE = 1L << 22; // smallest chunk worth handing to a separate task
+    static final int CHUNKS_PER_THREAD = 4; // extra chunks per thread, so that faster threads can steal work
+    static final int STRIPES_PER_THREAD = 4; // stripes of the shared table per thread, so that threads rarely wait
+    // distinct keywords a chunk gathers on its own before handing them to the shared table
+    static final int LOCAL_WORDS = 1 << 12;
+
+    private final FileChannel channel;
+    private final Charset charset;
+    private final StopFilter stopFilter;
+    private final BlockTokenizer.CaseFolding folding;
+    private final Normalizer.Form normalization; // form that words are put into, or null to leave them as they are
+    private final int phraseLength; // longest phrase counted, in keywords, or 0 to only count single keywords
+    private final int maxPhrases; // number of phrases each chunk keeps before the least frequent are pruned
+    private final StemCache stems; // stems keywords, shared by every chunk, or null to count them as they are written
+    private final boolean sharedCounts; // whether the chunks count keywords into one shared table
+    private final ForkJoinPool pool;
+    private final ScanProgress progress; // shared by every chunk, for reporting progress and checking whether to stop
+
+    /**
+     * @param channel file to scan
+     * @param charset charset the file is encoded in, which must be ASCII-compatible
+     * @param stopFilter StopFilter instance to use for filtering out stop words
+     * @param folding how letters are folded
+     * @param normalization Unicode normalization form that words are put into, or null to leave them as they are
+     * @param phraseLength longest phrase to count, in keywords, or 0 to only count single keywords
+     * @param maxPhrases number of phrases each chunk keeps before the least frequent are pruned
+     * @param stems StemCache to reduce keywords with, or null to count them as they are written
+     * @param sharedCounts whether the chunks count keywords into one shared table, rather than each into its own
+     * @param pool pool to run the scan on
+     * @param progress ScanProgress to report to
+     */
+    public ParallelScanner(FileChannel channel, Charset charset, StopFilter stopFilter,
+                           BlockTokenizer.CaseFolding folding, Normalizer.Form normalization, int phraseLength,
+                           int maxPhrases, StemCache stems, boolean sharedCounts, ForkJoinPool pool,
+                           ScanProgress progress) {
+        this.channel = channel;
+        this.charset = charset;
+        this.stopFilter = stopFilter;
+        this.folding = folding;
+        this.normalization = normalization;
+        this.phraseLength = phraseLength;
+        this.maxPhrases = maxPhrases;
+        this.stems = stems;
+        this.sharedCounts = sharedCounts;
+        this.pool = pool;
+        this.progress = progress;
+    }
+
+    /**
+     * Scans part of the file. As with a single-threaded scan, a word left unfinished at the end is not counted.
+     * @param start byte offset to start scanning from
+     * @param end byte offset to stop scanning at
+     * @return a WordTally holding the merged counts of every chunk
+     */
+    public WordTally scan(long start, long end) throws IOException {
+        long[] bounds = findChunkBounds(start, end);
+        SharedCounts shared = sharedCounts ? new SharedCounts() : null;
+        WordTally tally;
+        try {
+            tally = pool.invoke(new ChunkTask(bounds, 0, bounds.length - 1, shared));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        if (shared != null) {
+            shared.table.moveTo(tally.wordMap);
+            // the moved counts are published in place of the shared table's the next time the tally is
+            tally.candidates = shared.candidates;
+            tally.merged.add(shared.publication);
+        }
+        return tally;
+    }
+
+    /**
+     * Cuts the range into chunks of roughly equal size, moving each cut forward to just after the next ASCII byte
+     * that is not a letter.
+     * @return the byte offsets where the chunks start, followed by the end of the range
+     */
+    long[] findChunkBounds(long start, long end) throws IOException {
+        int chunks = pool.getParallelism() * CHUNKS_PER_THREAD;
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, (end - start) / chunks + 1);
+
+        ArrayList<Long> bounds = new ArrayList<>();
+        bounds.add(start);
+        ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        long cut = start + chunkSize;
+        while (cut < end) {
+            cut = findDelimiter(buf, cut, end);
+            if (cut >= end) break;
+            bounds.add(cut);
+            cut += chunkSize;
+        }
+        bounds.add(end);
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) result[i] = bounds.get(i);
+        return result;
+    }
+
+    /**
+     * Finds the first place at or after an offset where the file can be split without splitting a word.
+     * @param from byte offset to start looking from
+     * @param end byte offset to stop looking at
+     * @return the offset just after the first ASCII byte that is not a letter, or {@code end} if there is none
+     */
+    long nextBoundary(long from, long end) throws IOException {
+        return findDelimiter(ByteBuffer.allocate(1 << 16), from, end);
+    }
+
+    /**
+     * Looks for the first ASCII byte at or after an offset that is not a letter.
+     * @return the offset just after that byte, or {@code end} if there is none
+     */
+    private long findDelimiter(ByteBuffer buf, long from, long end) throws IOException {
+        long pos = from;
+        while (pos < end) {
+            buf.clear();
+            if (end - pos < buf.capacity()) buf.limit((int) (end - pos));
+            int n = channel.read(buf, pos);
+            if (n <= 0) break;
+            for (int i = 0; i < n; i++) {
+                byte b = buf.get(i);
+                if (b >= 0 && BlockTokenizer.ASCII_LOWER[b] == 0) return pos + i + 1;
+            }
+            pos += n;
+        }
+        return end;
+    }
+
+    /**
+     * Scans a range of chunks, splitting it in half until only one chunk is left.
+     */
+    @SuppressWarnings("serial")
+    private class ChunkTask extends RecursiveTask<WordTally> {
+
+        private final long[] bounds;
+        private final int from, to; // indices into bounds of the first chunk and of the end of the last chunk
+        private final SharedCounts shared; // the table the chunks count into, or null if each counts into its own
+
+        ChunkTask(long[] bounds, int from, int to, SharedCounts shared) {
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+            this.shared = shared;
+        }
+
+        @Override
+        protected WordTally compute() {
+            if (to - from == 1) {
+                WordTally tally = shared != null ? new SharedTally(shared)
+                        : new WordTally(stopFilter, progress, phraseLength, maxPhrases, stems);
+                try {
+                    tally.characterCount = new MappedScanner(charset, progress, folding, normalization)
+                            .scan(channel, bounds[from], bounds[to], tally);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (shared != null) ((SharedTally) tally).flush();
+                return tally;
+            }
+
+            int mid = (from + to) >>> 1;
+            ChunkTask right = new ChunkTask(bounds, mid, to, shared);
+            right.fork();
+            WordTally tally = new ChunkTask(bounds, from, mid, shared).compute();
+            tally.join(right.join());
+            return tally;
+        }
+    }
+
+    /**
+     * The table that every chunk of a scan with shared counts counts into.
+     */
+    private class SharedCounts {
+
+        final ConcurrentWordCountTable table = new ConcurrentWordCountTable(pool.getParallelism() * STRIPES_PER_THREAD);
+        // stands for the table when its top keywords are published as live results, since no chunk's tally holds them
+        final Object publication = new Object();
+        // the keywords of the table to publish as the top ones, or null if live results weren't asked for
+        final LiveResults.Candidates candidates = progress.getLiveResultsInterval() > 0 ? new LiveResults.Candidates()
+                : null;
+        private final AtomicLong nextPublish = new AtomicLong(System.nanoTime()); // when to next publish the table
+
+        /**
+         * Publishes the top keywords of the table if live results have been asked for and the refresh interval has
+         * passed, on whichever thread gets there first.
+         */
+        void publish() {
+            long interval = progress.getLiveResultsInterval();
+            long next = nextPublish.get();
+            if (interval > 0 && System.nanoTime() - next >= 0
+                    && nextPublish.compareAndSet(next, System.nanoTime() + interval)) {
+                progress.publish(publication, LiveResults.of(candidates.rank(table::get)), List.of());
+            }
+        }
+    }
+
+    /**
+     * The tally of a chunk that counts into a shared table. Gathers keywords in its own table until it holds
+     * {@link #LOCAL_WORDS} of them, and then adds them to the shared one, so that a common keyword takes a lock once
+     * per hand-over rather than every time it is seen. Hands over before publishing, so that it only publishes totals.
+     */
+    private class SharedTally extends WordTally {
+
+        private final SharedCounts shared;
+
+        SharedTally(SharedCounts shared) {
+            super(ParallelScanner.this.stopFilter, progress, phraseLength, maxPhrases, stems);
+            this.shared = shared;
+            candidates = null; // the shared table keeps the candidates, since this tally only holds a few counts
+        }
+
+        @Override
+        void addToWordCount(char[] buf, int off, int len) {
+            super.addToWordCount(buf, off, len);
+            if (wordMap.size() >= LOCAL_WORDS) flush();
+        }
+
+        @Override
+        void reportProgress() {
+            flush();
+            super.reportProgress();
+        }
+
+        /**
+         * Hands the keywords gathered so far to the shared table.
+         */
+        void flush() {
+            if (shared.candidates == null) shared.table.addAll(wordMap);
+            else wordMap.forEach((word, count) -> shared.candidates.counted(word, shared.table.add(word, count)));
+            wordMap.clear();
+            shared.publish();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+import java.util.Arrays;
+
+/**
+ * Counts phrases: runs of two or more keywords in a row, up to a longest length, such as "van helsing". Stop words
+ * break phrases, so a phrase never spans one. A {@link WordTally} passes every keyword to {@link #keyword} and every
+ * stop word to {@link #boundary()}, and this keeps the last few keywords in a window and counts each phrase ending with
+ * the newest one.
+ * <p>
+ * Memory is bounded by {@link #maxPhrases}. Until the table of phrases outgrows it, every count is exact. When it does,
+ * the table is pruned down to the half with the highest counts, and from then on a {@link CountMinSketch} counts
+ * every phrase as well. The sketch is first filled from the table, which still holds every phrase seen so far, so it
+ * estimates each phrase's count over the whole text. A phrase that isn't in the table is only added back once its
+ * estimate climbs above the counts that were pruned, and it starts from that estimate. The counts of phrases that
+ * were never pruned stay exact; the others can be over by at most the sketch's error at the time they were added back.
+ * <p>
+ * Tallies of neighbouring parts of a file can be joined with {@link #join(PhraseTally)}, which also counts the phrases
+ * spanning the two, so a file scanned in chunks gives the same counts as one scanned in one go, as long as nothing was
+ * pruned.
+ */
+public class PhraseTally {
+
+    static final int DEFAULT_MAX_PHRASES = 1 << 18; // default limit on the number of phrases kept in the table
+    static final int MIN_SKETCH_WIDTH = 1 << 10; // smallest number of counters in each row of the sketch
+
+    final int maxLength; // longest phrase counted, in keywords
+    final int maxPhrases; // number of phrases the table can hold before it is pruned
+    WordCountTable table = new WordCountTable(); // the phrases and their counts, with single spaces between keywords
+    private CountMinSketch sketch = null; // estimates the counts of every phrase, or null until the table is pruned
+    private long threshold = 1; // estimate a phrase must reach to be added to the table, once it has been pruned
+
+    // the last keywords since the last stop word, at most maxLength - 1 of them, separated by single spaces
+    private char[] window = new char[64];
+    private final int[] starts; // index in window of the first character of each keyword in it
+    private int windowWords = 0; // number of keywords in the window
+    private int windowLength = 0; // number of characters in the window
+
+    // the first keywords before the first stop word, at most maxLength - 1 of them, for joining with the text before
+    private final String[] leading;
+    private int leadingWords = 0; // number of keywords in leading
+    private boolean boundarySeen = false; // whether a stop word has been seen, which closes off leading
+
+    /**
+     * @param maxLength longest phrase to count, in keywords, which must be at least 2
+     * @param maxPhrases number of phrases the table can hold before it is pruned
+     */
+    public PhraseTally(int maxLength, int maxPhrases) {
+        if (maxLength < 2) throw new IllegalArgumentException("phrases must be at least 2 keywords long: " + maxLength);
+        if (maxPhrases < 2) throw new IllegalArgumentException("the table must hold at least 2 phrases: " + maxPhrases);
+        this.maxLength = maxLength;
+        this.maxPhrases = maxPhrases;
+        starts = new int[maxLength];
+        leading = new String[maxLength - 1];
+    }
+
+    /**
+     * Adds a keyword to the window and counts every phrase that ends with it.
+     * @param buf buffer holding the keyword
+     * @param off index of the first character of the keyword
+     * @param len number of characters in the keyword
+     */
+    public void keyword(char[] buf, int off, int len) {
+        if (!boundarySeen && leadingWords < leading.length) leading[leadingWords++] = new String(buf, off, len);
+
+        push(buf, off, len);
+        for (int words = 2; words <= windowWords; words++) {
+            int start = starts[windowWords - words];
+            count(window, start, windowLength - start);
+        }
+
+        // drops the oldest keyword once the window holds as many as the longest phrase
+        if (windowWords == maxLength) {
+            int shift = starts[1];
+            System.arraycopy(window, shift, window, 0, windowLength - shift);
+            windowLength -= shift;
+            for (int i = 1; i < windowWords; i++) starts[i - 1] = starts[i] - shift;
+            windowWords--;
+        }
+    }
+
+    /**
+     * Ends the current phrase, because a stop word was found.
+     */
+    public void boundary() {
+        windowWords = 0;
+        windowLength = 0;
+        boundarySeen = true;
+    }
+
+    /**
+     * Adds the counts of a tally of a separate text, such as another file. No phrases are counted across the two.
+     * @param other PhraseTally to add from
+     */
+    public void merge(PhraseTally other) {
+        // an estimate is only needed for a phrase the other tally has pruned, so a tally without a sketch gives 0
+        WordCountTable merged = new WordCountTable(Math.max(table.size(), other.table.size()) * 2);
+        table.forEach((phrase, count) -> merged.add(phrase, count + other.countOf(phrase)));
+        other.table.forEach((phrase, count) -> {
+            if (merged.get(phrase) == 0) merged.add(phrase, count + countOf(phrase));
+        });
+
+        if (sketch != null || other.sketch != null) {
+            startSketch();
+            other.startSketch();
+            sketch.addAll(other.sketch);
+        }
+        threshold = Math.max(threshold, other.threshold);
+
+        table = merged;
+        if (table.size() > maxPhrases) prune();
+    }
+
+    /**
+     * Adds the counts of the tally of the text right after this one, then counts the phrases that start in this text
+     * and end in the next. Afterwards, this tally stands for the two texts together, as if it had scanned both.
+     * @param next PhraseTally of the text right after this one
+     */
+    public void join(PhraseTally next) {
+        merge(next);
+
+        String[] before = windowWords(); // keywords at the end of this text, after its last stop word
+        String[] after = Arrays.copyOf(next.leading, next.leadingWords); // keywords at the start of the next text
+        String[] words = Arrays.copyOf(before, before.length + after.length);
+        System.arraycopy(after, 0, words, before.length, after.length);
+        for (int last = before.length; last < words.length; last++) {
+            for (int first = Math.max(0, last - maxLength + 1); first < before.length; first++) {
+                String phrase = String.join(" ", Arrays.asList(words).subList(first, last + 1));
+                count(phrase.toCharArray(), 0, phrase.length());
+            }
+        }
+
+        // the joined text starts the way this one does, carrying on into the next if this one has no stop words
+        if (!boundarySeen) {
+            for (int i = 0; i < next.leadingWords && leadingWords < leading.length; i++) {
+                leading[leadingWords++] = next.leading[i];
+            }
+        }
+        boundarySeen |= next.boundarySeen;
+
+        // and ends the way the next one does, including the end of this one if the next has no stop words
+        String[] ending = next.windowWords();
+        if (!next.boundarySeen) {
+            String[] all = Arrays.copyOf(before, before.length + ending.length);
+            System.arraycopy(ending, 0, all, before.length, ending.length);
+            ending = Arrays.copyOfRange(all, Math.max(0, all.length - (maxLength - 1)), all.length);
+        }
+        windowWords = 0;
+        windowLength = 0;
+        for (String word : ending) push(word.toCharArray(), 0, word.length());
+    }
+
+    /**
+     * @return whether any phrase has been pruned, which makes counts of phrases added back afterwards estimates
+     */
+    public boolean isPruned() {
+        return sketch != null;
+    }
+
+    /**
+     * Appends a keyword to the window, after a space if it isn't the first.
+     */
+    private void push(char[] buf, int off, int len) {
+        if (windowLength + len + 1 > window.length) window = Arrays.copyOf(window, (windowLength + len + 1) * 2);
+        if (windowWords > 0) window[windowLength++] = ' ';
+        starts[windowWords++] = windowLength;
+        System.arraycopy(buf, off, window, windowLength, len);
+        windowLength += len;
+    }
+
+    /**
+     * Counts one occurrence of a phrase.
+     */
+    private void count(char[] buf, int off, int len) {
+        if (sketch == null) {
+            table.increment(buf, off, len);
+            if (table.size() > maxPhrases) prune();
+            return;
+        }
+
+        long estimate = sketch.add(CountMinSketch.hash(buf, off, len), 1);
+        if (table.incrementExisting(buf, off, len) == 0 && estimate >= threshold) {
+            table.add(new String(buf, off, len), estimate);
+            if (table.size() > maxPhrases) prune();
+        }
+    }
+
+    /**
+     * Removes the phrases with the lowest counts, keeping at most half of {@link #maxPhrases}, and raises the
+     * threshold for adding phrases back above the highest count removed.
+     */
+    private void prune() {
+        startSketch();
+        long[] counts = new long[table.size()];
+        int[] n = {0};
+        table.forEach((phrase, count) -> counts[n[0]++] = count);
+        Arrays.sort(counts);
+        long floor = counts[counts.length - maxPhrases / 2 - 1];
+        table.retainAbove(floor);
+        threshold = Math.max(threshold, floor + 1);
+    }
+
+    /**
+     * Creates the sketch if there isn't one yet, filling it from the table, which holds every phrase seen so far.
+     */
+    private void startSketch() {
+        if (sketch != null) return;
+        sketch = new CountMinSketch(Math.max(MIN_SKETCH_WIDTH, maxPhrases / 2));
+        table.forEach((phrase, count) -> sketch.add(CountMinSketch.hash(phrase), count));
+    }
+
+    /**
+     * @return the count of a phrase, or its estimate if it isn't in the table but may have been pruned from it
+     */
+    private long countOf(String phrase) {
+        long count = table.get(phrase);
+        return count != 0 || sketch == null ? count : sketch.estimate(CountMinSketch.hash(phrase));
+    }
+
+    /**
+     * @return the keywords in the window, oldest first
+     */
+    private String[] windowWords() {
+        String[] words = new String[windowWords];
+        for (int i = 0; i < windowWords; i++) {
+            int end = i + 1 < windowWords ? starts[i + 1] - 1 : windowLength;
+            words[i] = new String(window, starts[i], end - starts[i]);
+        }
+        return words;
+    }
+}
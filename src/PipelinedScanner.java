@@ -0,0 +1,424 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Scans a file as a pipeline of stages that each run on their own thread, so that reading the file overlaps with
+ * tokenizing and counting it. This helps most when the file is on slow storage, such as a network drive, where a scan
+ * on one thread spends much of its time waiting for the next block to arrive.
+ * <ol>
+ *     <li>The reader reads the file in blocks of {@link #BLOCK_SIZE} bytes.</li>
+ *     <li>The tokenizer decodes the blocks with a {@link MappedScanner} and collects the words into batches.</li>
+ *     <li>The filter passes the words through a {@link WordTally}, which keeps the totals, filters out stop words and
+ *     counts phrases, and hands each keyword to the counter picked by its hash.</li>
+ *     <li>The counters each count their own share of the keywords into their own {@link WordTally}.</li>
+ * </ol>
+ * The stages are connected by {@link RingBuffer}s holding a few blocks or batches at a time, and the blocks and batches
+ * are handed back through rings of their own once they have been used, so the scan allocates nothing as it goes. A
+ * stage that gets ahead of the next one waits for a free block or batch, so the whole scan never holds more than
+ * {@link #RING_SIZE} of each.
+ * <p>
+ * The filter runs on the thread that calls {@link #scan(long, long)}. Words are counted in the same order as by a
+ * single-threaded scan, so the counts, totals and phrases are exactly the same. Live results are published by the
+ * counters, which hold the keywords, and by the filter, which holds the totals.
+ */
+public class PipelinedScanner {
+
+    static final int BLOCK_SIZE = 1 << 18; // number of bytes read from the file at a time
+    static final int BATCH_SIZE = 1 << 14; // number of characters of words passed between stages at a time
+    static final int BATCH_WORDS = 1 << 12; // most words passed between stages at a time
+    static final int RING_SIZE = 8; // number of blocks or batches that can wait between two stages
+    static final int MAX_COUNTERS = 4; // most counter threads, beyond which the filter can't keep them busy
+    static final int SPINS = 1 << 7; // number of times a stage checks again before yielding to other threads
+    static final int YIELDS = 1 << 4; // number of times a stage yields before sleeping between checks
+    static final long PARK_NANOS = 50_000; // how long a stage sleeps between checks, once it has yielded
+
+    private final FileChannel channel;
+    private final Charset charset;
+    private final StopFilter stopFilter;
+    private final BlockTokenizer.CaseFolding folding;
+    private final Normalizer.Form normalization; // form that words are put into, or null to leave them as they are
+    private final int phraseLength; // longest phrase counted, in keywords, or 0 to only count single keywords
+    private final int maxPhrases; // number of phrases kept before the least frequent are pruned
+    private final StemCache stems; // stems keywords, or null to count them as they are written
+    private final int counters; // number of counter threads
+    private final ScanProgress progress; // shared by every stage, for reporting progress and checking whether to stop
+    // the first exception thrown by any stage, which stops every other stage the next time it waits
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * @param channel file to scan
+     * @param charset charset the file is encoded in
+     * @param stopFilter StopFilter instance to use for filtering out stop words
+     * @param folding how letters are folded
+     * @param normalization Unicode normalization form that words are put into, or null to leave them as they are
+     * @param phraseLength longest phrase to count, in keywords, or 0 to only count single keywords
+     * @param maxPhrases number of phrases to keep before the least frequent are pruned
+     * @param stems StemCache to reduce keywords with, or null to count them as they are written
+     * @param threads number of threads the scan should use, of which all but the reader, tokenizer and filter count
+     *                keywords, with at least 1 and at most {@link #MAX_COUNTERS} counters
+     * @param progress ScanProgress to report to
+     */
+    public PipelinedScanner(FileChannel channel, Charset charset, StopFilter stopFilter,
+                            BlockTokenizer.CaseFolding folding, Normalizer.Form normalization, int phraseLength,
+                            int maxPhrases, StemCache stems, int threads, ScanProgress progress) {
+        this.channel = channel;
+        this.charset = charset;
+        this.stopFilter = stopFilter;
+        this.folding = folding;
+        this.normalization = normalization;
+        this.phraseLength = phraseLength;
+        this.maxPhrases = maxPhrases;
+        this.stems = stems;
+        counters = Math.max(1, Math.min(MAX_COUNTERS, threads - 3));
+        this.progress = progress;
+    }
+
+    /**
+     * Scans part of the file to its end. As with a single-threaded scan, a word left unfinished at the end is not
+     * counted.
+     * @param start byte offset to start scanning from
+     * @param end byte offset to stop scanning at, which is taken as the end of the input
+     * @return a WordTally holding the counts and totals of the whole range
+     */
+    public WordTally scan(long start, long end) throws IOException {
+        TokenizeStage tokenizer = new TokenizeStage();
+        FilterStage filter = new FilterStage();
+        CountStage[] countStages = new CountStage[counters];
+        for (int i = 0; i < counters; i++) countStages[i] = new CountStage(filter.keywords.get(i), filter.freeKeywords);
+
+        Thread[] threads = new Thread[counters + 2];
+        threads[0] = new Thread(new ReadStage(start, end, tokenizer), "pipeline-reader");
+        threads[1] = new Thread(tokenizer, "pipeline-tokenizer");
+        for (int i = 0; i < counters; i++) threads[i + 2] = new Thread(countStages[i], "pipeline-counter-" + i);
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        try {
+            filter.run(tokenizer);
+        } catch (Throwable e) {
+            fail(e);
+        } finally {
+            // waits for every stage to stop, even when the scan has failed, so that none of them is left reading
+            boolean interrupted = false;
+            for (Thread thread : threads) {
+                while (thread.isAlive()) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+
+        Throwable e = failure.get();
+        if (e instanceof UncheckedIOException) throw ((UncheckedIOException) e).getCause();
+        if (e instanceof RuntimeException) throw (RuntimeException) e;
+        if (e instanceof Error) throw (Error) e;
+
+        filter.characterCount = tokenizer.characterCount;
+        for (CountStage counter : countStages) filter.merge(counter.tally);
+        return filter;
+    }
+
+    /**
+     * Records the exception that stops the scan, unless another stage has already failed first.
+     */
+    private void fail(Throwable e) {
+        failure.compareAndSet(null, e);
+    }
+
+    /**
+     * Puts an item into a ring, waiting for room if it is full.
+     * @throws CancellationException if another stage fails while this one is waiting
+     */
+    private <E> void put(RingBuffer<E> ring, E item) {
+        for (int tries = 0; !ring.offer(item); tries++) idle(tries);
+    }
+
+    /**
+     * Takes an item out of a ring, waiting for one if it is empty.
+     * @throws CancellationException if another stage fails while this one is waiting
+     */
+    private <E> E take(RingBuffer<E> ring) {
+        E item;
+        for (int tries = 0; (item = ring.poll()) == null; tries++) idle(tries);
+        return item;
+    }
+
+    /**
+     * Waits a little before a stage checks its ring again: spinning at first, since the next stage usually catches up
+     * quickly, then giving up the processor, and then sleeping, so that a stage held up by slow storage doesn't keep a
+     * core busy.
+     * @param tries number of times the ring has been checked already
+     * @throws CancellationException if another stage has failed
+     */
+    private void idle(int tries) {
+        if (failure.get() != null) throw new CancellationException("Another stage of the scan failed");
+        if (tries < SPINS) Thread.onSpinWait();
+        else if (tries < SPINS + YIELDS) Thread.yield();
+        else LockSupport.parkNanos(PARK_NANOS);
+    }
+
+    /**
+     * Bytes read from the file, on their way from the reader to the tokenizer.
+     */
+    private static class Block {
+
+        final ByteBuffer bytes = ByteBuffer.allocate(BLOCK_SIZE); // bytes read, from its position to its limit
+        boolean last; // whether the block ends the range being scanned
+    }
+
+    /**
+     * Words on their way from one stage to the next, stored one after another in a single array.
+     */
+    private static class Batch {
+
+        char[] chars = new char[BATCH_SIZE]; // the characters of the words, one word after another
+        final int[] ends = new int[BATCH_WORDS]; // the index in chars just after the end of each word
+        int count; // number of words in the batch
+        boolean last; // whether the batch holds the last words of the scan
+
+        /**
+         * Adds a word to the batch, unless it is full. A word too long for an empty batch is still added.
+         * @return true if the word was added, or false if the batch is full
+         */
+        boolean add(char[] buf, int off, int len) {
+            int length = count == 0 ? 0 : ends[count - 1];
+            if (count == ends.length || length + len > chars.length) {
+                if (count > 0) return false;
+                chars = new char[len];
+            }
+            System.arraycopy(buf, off, chars, length, len);
+            ends[count++] = length + len;
+            return true;
+        }
+
+        /**
+         * Empties the batch, so that it can be used again.
+         */
+        void clear() {
+            count = 0;
+            last = false;
+        }
+    }
+
+    /**
+     * Reads the file in blocks and hands them to the tokenizer.
+     */
+    private class ReadStage implements Runnable {
+
+        private final long start; // byte offset of the first byte to read
+        private final long end; // byte offset to stop reading at
+        private final RingBuffer<Block> full; // blocks read and waiting for the tokenizer
+        private final RingBuffer<Block> free; // blocks the tokenizer is done with
+
+        ReadStage(long start, long end, TokenizeStage tokenizer) {
+            this.start = start;
+            this.end = end;
+            full = tokenizer.blocks;
+            free = tokenizer.freeBlocks;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long position = start;
+                boolean last;
+                do {
+                    Block block = take(free);
+                    ByteBuffer bytes = block.bytes;
+                    bytes.clear();
+                    bytes.limit((int) Math.min(bytes.capacity(), end - position));
+                    boolean endOfFile = false;
+                    while (bytes.hasRemaining() && !endOfFile) {
+                        endOfFile = channel.read(bytes, position + bytes.position()) < 0;
+                    }
+                    position += bytes.position();
+                    progress.addBytes(bytes.position()); // also stops the scan if it has been canceled
+                    bytes.flip();
+
+                    last = endOfFile || position >= end;
+                    block.last = last;
+                    put(full, block);
+                } while (!last);
+            } catch (IOException e) {
+                fail(new UncheckedIOException(e));
+            } catch (Throwable e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Decodes the blocks from the reader and collects the words in them into batches for the filter.
+     */
+    private class TokenizeStage implements Runnable, TokenHandler {
+
+        final RingBuffer<Block> blocks = RingBuffer.createSingleProducerRing(RING_SIZE);
+        final RingBuffer<Block> freeBlocks = RingBuffer.createSingleProducerRing(RING_SIZE);
+        final RingBuffer<Batch> words = RingBuffer.createSingleProducerRing(RING_SIZE);
+        final RingBuffer<Batch> freeWords = RingBuffer.createSingleProducerRing(RING_SIZE);
+        private final MappedScanner scanner = new MappedScanner(charset, progress, folding, normalization);
+        // the bytes being decoded, which hold the start of a character split across two blocks until the next arrives
+        private ByteBuffer pending = ByteBuffer.allocate(BLOCK_SIZE + 16);
+        private Batch batch; // the batch being filled
+        long characterCount; // number of characters decoded, read once this stage has finished
+
+        TokenizeStage() {
+            for (int i = 0; i < freeBlocks.capacity(); i++) freeBlocks.offer(new Block());
+            for (int i = 0; i < freeWords.capacity(); i++) freeWords.offer(new Batch());
+        }
+
+        @Override
+        public void run() {
+            try {
+                batch = take(freeWords);
+                boolean last;
+                do {
+                    Block block = take(blocks);
+                    last = block.last;
+                    if (pending.remaining() < block.bytes.remaining()) {
+                        pending.flip();
+                        pending = ByteBuffer.allocate(pending.remaining() + BLOCK_SIZE).put(pending);
+                    }
+                    pending.put(block.bytes);
+                    put(freeBlocks, block);
+
+                    pending.flip();
+                    int characters = scanner.scanBytes(pending, last, this);
+                    pending.compact();
+                    characterCount += characters;
+                    progress.addCharacters(characters);
+                } while (!last);
+
+                batch.last = true;
+                put(words, batch);
+            } catch (Throwable e) {
+                fail(e);
+            }
+        }
+
+        @Override
+        public void word(char[] buf, int off, int len) {
+            if (!batch.add(buf, off, len)) {
+                put(words, batch);
+                batch = take(freeWords);
+                batch.add(buf, off, len);
+            }
+        }
+    }
+
+    /**
+     * Keeps the totals and phrases of the scan, filtering the words from the tokenizer in order and handing each
+     * keyword to the counter picked by its hash in place of counting it.
+     */
+    private class FilterStage extends WordTally {
+
+        final List<RingBuffer<Batch>> keywords; // keywords waiting for each counter
+        final RingBuffer<Batch> freeKeywords; // batches the counters are done with
+        private final Batch[] batches; // the batch being filled for each counter
+
+        FilterStage() {
+            super(PipelinedScanner.this.stopFilter, progress, phraseLength, maxPhrases, stems);
+            keywords = new ArrayList<>(counters);
+            for (int i = 0; i < counters; i++) keywords.add(RingBuffer.createSingleProducerRing(RING_SIZE));
+            // has room for every batch, so that a counter never waits to hand one back
+            freeKeywords = RingBuffer.createMultiProducerRing(counters * RING_SIZE + counters);
+            for (int i = 0; i < counters * RING_SIZE + counters; i++) freeKeywords.offer(new Batch());
+            batches = new Batch[counters];
+            for (int i = 0; i < counters; i++) batches[i] = take(freeKeywords);
+        }
+
+        /**
+         * Filters every batch of words from the tokenizer, and then hands the counters their last batches.
+         */
+        void run(TokenizeStage tokenizer) {
+            boolean last;
+            do {
+                Batch batch = take(tokenizer.words);
+                last = batch.last;
+                char[] chars = batch.chars;
+                int[] ends = batch.ends;
+                for (int i = 0, start = 0; i < batch.count; start = ends[i++]) word(chars, start, ends[i] - start);
+                batch.clear();
+                put(tokenizer.freeWords, batch);
+            } while (!last);
+
+            for (int i = 0; i < counters; i++) {
+                batches[i].last = true;
+                put(keywords.get(i), batches[i]);
+            }
+        }
+
+        @Override
+        void addToWordCount(char[] buf, int off, int len) {
+            int hash = 0; // the same as String.hashCode() of the word
+            for (int i = off, end = off + len; i < end; i++) hash = 31 * hash + buf[i];
+            // takes the counter from the top bits of a mixed hash, since the low bits pick the slot in its table
+            int counter = (int) (((hash * 0x9E3779B9L) & 0xFFFFFFFFL) * counters >>> 32);
+
+            Batch batch = batches[counter];
+            if (!batch.add(buf, off, len)) {
+                put(keywords.get(counter), batch);
+                batch = batches[counter] = take(freeKeywords);
+                batch.add(buf, off, len);
+            }
+            if (len > maxWordLen) maxWordLen = len;
+        }
+    }
+
+    /**
+     * Counts the keywords handed to it by the filter, publishing them as live results if they have been asked for.
+     */
+    private class CountStage implements Runnable {
+
+        private final RingBuffer<Batch> keywords; // keywords waiting to be counted
+        private final RingBuffer<Batch> free; // where batches are handed back to the filter
+        final WordTally tally = new WordTally(stopFilter, progress); // the counts of this counter's keywords
+
+        CountStage(RingBuffer<Batch> keywords, RingBuffer<Batch> free) {
+            this.keywords = keywords;
+            this.free = free;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long nextPublish = System.nanoTime();
+                boolean last;
+                do {
+                    Batch batch = take(keywords);
+                    last = batch.last;
+                    char[] chars = batch.chars;
+                    int[] ends = batch.ends;
+                    for (int i = 0, start = 0; i < batch.count; start = ends[i++]) {
+                        tally.addToWordCount(chars, start, ends[i] - start);
+                    }
+                    batch.clear();
+                    put(free, batch);
+
+                    long interval = progress.getLiveResultsInterval();
+                    if (interval > 0 && System.nanoTime() - nextPublish >= 0) {
+                        progress.publish(tally.publication, LiveResults.of(tally), List.of());
+                        nextPublish = System.nanoTime() + interval;
+                    }
+                } while (!last);
+            } catch (Throwable e) {
+                fail(e);
+            }
+        }
+    }
+}
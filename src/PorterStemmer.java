@@ -0,0 +1,284 @@
+/**
+ * Stems English words with the Porter algorithm (M.F. Porter, "An algorithm for suffix stripping", 1980), which strips
+ * suffixes in five steps, each of which only applies when enough of the word is left before the suffix. Stems aren't
+ * always words themselves: "vampire" and "vampires" both become "vampir", and "relational" becomes "relat".
+ * <p>
+ * Only words made up entirely of the letters a to z are stemmed, and any other word is left as it is, since the rules
+ * only make sense for English.
+ */
+public class PorterStemmer implements Stemmer {
+
+    @Override
+    public String stem(String word) {
+        if (word.length() <= 2) return word;
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c < 'a' || c > 'z') return word;
+        }
+        return new Run(word).stem();
+    }
+
+    @Override
+    public String name() {
+        return "porter";
+    }
+
+    /**
+     * Stems a single word. The steps and their names follow Porter's own implementation, with b holding the word and
+     * k the index of its last character as suffixes are stripped.
+     */
+    private static class Run {
+
+        private final char[] b; // the word, with room for the longest replacement suffix
+        private int k; // index of the last character of the stem so far
+        private int j; // index of the last character before the suffix that was last matched
+
+        Run(String word) {
+            b = new char[word.length() + 1];
+            word.getChars(0, word.length(), b, 0);
+            k = word.length() - 1;
+        }
+
+        String stem() {
+            step1ab();
+            step1c();
+            step2();
+            step3();
+            step4();
+            step5();
+            return new String(b, 0, k + 1);
+        }
+
+        /**
+         * @return true if the character at i is a consonant, where "y" is one unless it follows a consonant
+         */
+        private boolean cons(int i) {
+            return switch (b[i]) {
+                case 'a', 'e', 'i', 'o', 'u' -> false;
+                case 'y' -> i == 0 || !cons(i - 1);
+                default -> true;
+            };
+        }
+
+        /**
+         * @return the measure of b[0..j]: the number of vowel-consonant sequences in it, the m of the paper
+         */
+        private int m() {
+            int n = 0, i = 0;
+            while (true) {
+                if (i > j) return n;
+                if (!cons(i)) break;
+                i++;
+            }
+            i++;
+            while (true) {
+                while (true) {
+                    if (i > j) return n;
+                    if (cons(i)) break;
+                    i++;
+                }
+                i++;
+                n++;
+                while (true) {
+                    if (i > j) return n;
+                    if (!cons(i)) break;
+                    i++;
+                }
+                i++;
+            }
+        }
+
+        /**
+         * @return true if b[0..j] contains a vowel
+         */
+        private boolean vowelInStem() {
+            for (int i = 0; i <= j; i++) if (!cons(i)) return true;
+            return false;
+        }
+
+        /**
+         * @return true if b[i-1..i] is a double consonant
+         */
+        private boolean doubleC(int i) {
+            return i >= 1 && b[i] == b[i - 1] && cons(i);
+        }
+
+        /**
+         * @return true if b[i-2..i] is consonant-vowel-consonant, and the last consonant isn't w, x or y, which marks
+         *         short words such as "hop" that keep or get back a final "e"
+         */
+        private boolean cvc(int i) {
+            if (i < 2 || !cons(i) || cons(i - 1) || !cons(i - 2)) return false;
+            char c = b[i];
+            return c != 'w' && c != 'x' && c != 'y';
+        }
+
+        /**
+         * @return true if b[0..k] ends with the suffix, in which case j is set to the index before it
+         */
+        private boolean ends(String suffix) {
+            int length = suffix.length(), start = k - length + 1;
+            if (start < 0) return false;
+            for (int i = 0; i < length; i++) if (b[start + i] != suffix.charAt(i)) return false;
+            j = k - length;
+            return true;
+        }
+
+        /**
+         * Replaces the characters after j with a new suffix.
+         */
+        private void setTo(String suffix) {
+            suffix.getChars(0, suffix.length(), b, j + 1);
+            k = j + suffix.length();
+        }
+
+        /**
+         * Replaces the suffix if the stem before it has a measure above 0.
+         */
+        private void r(String suffix) {
+            if (m() > 0) setTo(suffix);
+        }
+
+        /**
+         * Removes plurals and -ed or -ing, e.g. caresses -> caress, ponies -> poni, agreed -> agree,
+         * hopping -> hop, filing -> file.
+         */
+        private void step1ab() {
+            if (b[k] == 's') {
+                if (ends("sses")) k -= 2;
+                else if (ends("ies")) setTo("i");
+                else if (b[k - 1] != 's') k--;
+            }
+            if (ends("eed")) {
+                if (m() > 0) k--;
+            } else if ((ends("ed") || ends("ing")) && vowelInStem()) {
+                k = j;
+                if (ends("at")) setTo("ate");
+                else if (ends("bl")) setTo("ble");
+                else if (ends("iz")) setTo("ize");
+                else if (doubleC(k)) {
+                    k--;
+                    char c = b[k];
+                    if (c == 'l' || c == 's' || c == 'z') k++;
+                } else if (m() == 1 && cvc(k)) setTo("e");
+            }
+        }
+
+        /**
+         * Turns a final "y" into "i" when there is another vowel in the stem, e.g. happy -> happi.
+         */
+        private void step1c() {
+            if (ends("y") && vowelInStem()) b[k] = 'i';
+        }
+
+        /**
+         * Maps double suffixes to single ones, e.g. relational -> relate, digitizer -> digitize.
+         */
+        private void step2() {
+            if (k == 0) return;
+            switch (b[k - 1]) {
+                case 'a' -> {
+                    if (ends("ational")) r("ate");
+                    else if (ends("tional")) r("tion");
+                }
+                case 'c' -> {
+                    if (ends("enci")) r("ence");
+                    else if (ends("anci")) r("ance");
+                }
+                case 'e' -> {
+                    if (ends("izer")) r("ize");
+                }
+                case 'l' -> {
+                    if (ends("bli")) r("ble");
+                    else if (ends("alli")) r("al");
+                    else if (ends("entli")) r("ent");
+                    else if (ends("eli")) r("e");
+                    else if (ends("ousli")) r("ous");
+                }
+                case 'o' -> {
+                    if (ends("ization")) r("ize");
+                    else if (ends("ation")) r("ate");
+                    else if (ends("ator")) r("ate");
+                }
+                case 's' -> {
+                    if (ends("alism")) r("al");
+                    else if (ends("iveness")) r("ive");
+                    else if (ends("fulness")) r("ful");
+                    else if (ends("ousness")) r("ous");
+                }
+                case 't' -> {
+                    if (ends("aliti")) r("al");
+                    else if (ends("iviti")) r("ive");
+                    else if (ends("biliti")) r("ble");
+                }
+                case 'g' -> {
+                    if (ends("logi")) r("log");
+                }
+                default -> {
+                }
+            }
+        }
+
+        /**
+         * Handles -ic-, -full, -ness and the like, e.g. triplicate -> triplic, hopeful -> hope.
+         */
+        private void step3() {
+            switch (b[k]) {
+                case 'e' -> {
+                    if (ends("icate")) r("ic");
+                    else if (ends("ative")) r("");
+                    else if (ends("alize")) r("al");
+                }
+                case 'i' -> {
+                    if (ends("iciti")) r("ic");
+                }
+                case 'l' -> {
+                    if (ends("ical")) r("ic");
+                    else if (ends("ful")) r("");
+                }
+                case 's' -> {
+                    if (ends("ness")) r("");
+                }
+                default -> {
+                }
+            }
+        }
+
+        /**
+         * Removes -ant, -ence and the like from stems with a measure above 1, e.g. allowance -> allow,
+         * adoption -> adopt.
+         */
+        private void step4() {
+            if (k == 0) return;
+            boolean found = switch (b[k - 1]) {
+                case 'a' -> ends("al");
+                case 'c' -> ends("ance") || ends("ence");
+                case 'e' -> ends("er");
+                case 'i' -> ends("ic");
+                case 'l' -> ends("able") || ends("ible");
+                case 'n' -> ends("ant") || ends("ement") || ends("ment") || ends("ent");
+                case 'o' -> ends("ion") && j >= 0 && (b[j] == 's' || b[j] == 't') || ends("ou");
+                case 's' -> ends("ism");
+                case 't' -> ends("ate") || ends("iti");
+                case 'u' -> ends("ous");
+                case 'v' -> ends("ive");
+                case 'z' -> ends("ize");
+                default -> false;
+            };
+            if (found && m() > 1) k = j;
+        }
+
+        /**
+         * Removes a final "e" and turns a final "ll" into "l" in stems with a large enough measure, e.g.
+         * probate -> probat, controll -> control.
+         */
+        private void step5() {
+            j = k;
+            if (b[k] == 'e') {
+                int measure = m();
+                if (measure > 1 || measure == 1 && !cvc(k - 1)) k--;
+            }
+            if (b[k] == 'l' && doubleC(k) && m() > 1) k--;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reports every byte read through it to a {@link ScanProgress}, which also gives the scan a chance to be canceled.
+ */
+public class ProgressInputStream extends FilterInputStream {
+
+    private final ScanProgress progress;
+
+    /**
+     * @param in stream to read from
+     * @param progress ScanProgress to report to
+     */
+    public ProgressInputStream(InputStream in, ScanProgress progress) {
+        super(in);
+        this.progress = progress;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) progress.addBytes(1);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) progress.addBytes(n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        progress.addBytes(skipped);
+        return skipped;
+    }
+}
@@ -0,0 +1,35 @@
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reports every character read through it to a {@link ScanProgress}, so that the number of characters scanned can be
+ * shown while a scan is running.
+ */
+public class ProgressReader extends FilterReader {
+
+    private final ScanProgress progress;
+
+    /**
+     * @param in Reader to read from
+     * @param progress ScanProgress to report to
+     */
+    public ProgressReader(Reader in, ScanProgress progress) {
+        super(in);
+        this.progress = progress;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int c = super.read();
+        if (c != -1) progress.addCharacters(1);
+        return c;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        int n = super.read(cbuf, off, len);
+        if (n > 0) progress.addCharacters(n);
+        return n;
+    }
+}
@@ -0,0 +1,219 @@
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+
+/**
+ * Keeps the results of past scans on disk, so that scanning a file whose contents have been scanned before returns
+ * the saved results instead of scanning it again.
+ * <p>
+ * Results are stored as {@link ResultSnapshot} files, named by a key made from a SHA-256 hash of the file's contents,
+ * the fingerprint of the stop words, the charset, the number of header characters skipped and the way words are read,
+ * so a result is only reused when every one of those matches. The content hash of each file is remembered along with
+ * its size and modification time, so a file that hasn't changed since it was last hashed isn't read again.
+ * <p>
+ * The cache is kept under a size limit by deleting the least recently used files whenever a result is added. Using a
+ * file updates its modification time, which is what the eviction goes by.
+ */
+public class ResultCache {
+
+    public static final File DEFAULT_DIRECTORY = new File(System.getProperty("user.home") + "//.tagextractor//cache");
+    public static final long DEFAULT_MAX_BYTES = 256L << 20; // default limit on the total size of the cache
+
+    static final int VERSION = 2; // part of every key, and changed whenever scans start producing different results
+    static final String HASH_EXTENSION = ".hash"; // extension of the files remembering the content hash of a file
+
+    private final File directory;
+    private final long maxBytes; // limit on the total size of the files in the cache
+
+    /**
+     * Creates a new instance of ResultCache that keeps its files in the given directory. The directory is created
+     * when the first result is added.
+     * @param directory directory to keep results in
+     * @param maxBytes limit on the total size of the cache, in bytes
+     * @return an instance of ResultCache
+     */
+    public static ResultCache createResultCache(File directory, long maxBytes) {
+        return new ResultCache(directory, maxBytes);
+    }
+
+    /**
+     * Works out the key that the results of scanning a file are stored under.
+     * @param target file to scan
+     * @param stopFilter StopFilter the file is scanned with
+     * @param charset charset the file is decoded with
+     * @param skip number of characters skipped at the start of the file
+     * @param tokenization how words are read, as described by {@link ScanOptions#tokenization()}
+     * @return the key, as a string of hex digits
+     */
+    String key(File target, StopFilter stopFilter, Charset charset, long skip, String tokenization)
+            throws IOException {
+        MessageDigest digest = sha256();
+        digest.update(contentHash(target));
+        digest.update((VERSION + "|" + stopFilter.fingerprint() + "|" + charset.name() + "|" + skip + "|"
+                + tokenization).getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest(), 0, 16);
+    }
+
+    /**
+     * Looks up the results stored under a key.
+     * @param key key returned by {@link #key(File, StopFilter, Charset, long, String)}
+     * @return the stored results, or null if there are none
+     */
+    WordTally get(String key) {
+        File entry = entryFile(key);
+        if (!entry.isFile()) return null;
+        try {
+            WordTally tally = ResultSnapshot.read(entry);
+            touch(entry);
+            return tally;
+        } catch (IOException e) {
+            // a damaged entry is deleted so that it gets replaced by the next scan
+            //noinspection ResultOfMethodCallIgnored
+            entry.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the results of a scan under a key, then deletes the least recently used files if the cache has grown past
+     * its limit. The cache only saves time, so if the results can't be written they are left out of it.
+     * @param key key returned by {@link #key(File, StopFilter, Charset, long, String)}
+     * @param wordCounter results to store
+     */
+    void put(String key, WordCounter wordCounter) {
+        try {
+            Files.createDirectories(directory.toPath());
+            File partial = File.createTempFile(key, ".part", directory);
+            try {
+                ResultSnapshot.write(wordCounter, partial);
+                Files.move(partial.toPath(), entryFile(key).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                //noinspection ResultOfMethodCallIgnored
+                partial.delete();
+            }
+            evict();
+        } catch (IOException ignored) {
+            // scans carry on without the cache when it can't be written to
+        }
+    }
+
+    /**
+     * Gets the SHA-256 hash of a file's contents, reusing the hash remembered from the last time if the file's size
+     * and modification time are the same.
+     */
+    private byte[] contentHash(File target) throws IOException {
+        long size = target.length(), modified = target.lastModified();
+        File memo = new File(directory, Integer.toHexString(target.getAbsolutePath().hashCode()) + HASH_EXTENSION);
+        if (memo.isFile()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(memo)))) {
+                if (in.readUTF().equals(target.getAbsolutePath()) && in.readLong() == size
+                        && in.readLong() == modified) {
+                    byte[] hash = new byte[32];
+                    in.readFully(hash);
+                    touch(memo);
+                    return hash;
+                }
+            } catch (IOException ignored) {
+                // hashes the file again below
+            }
+        }
+
+        MessageDigest digest = sha256();
+        try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.READ)) {
+            for (long position = 0, end = channel.size(); position < end; position += MappedScanner.WINDOW_SIZE) {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MappedScanner.WINDOW_SIZE, end - position)));
+            }
+        }
+        byte[] hash = digest.digest();
+
+        try {
+            Files.createDirectories(directory.toPath());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(memo)))) {
+                out.writeUTF(target.getAbsolutePath());
+                out.writeLong(size);
+                out.writeLong(modified);
+                out.write(hash);
+            }
+        } catch (IOException ignored) {
+            // the file is just hashed again next time
+        }
+        return hash;
+    }
+
+    /**
+     * Deletes the least recently used files until the cache is back under its size limit.
+     */
+    private synchronized void evict() {
+        evict(directory, maxBytes);
+    }
+
+    /**
+     * Deletes the least recently used files in a directory until their total size is back under a limit, going by
+     * each file's modification time. Files still being written, which end in ".part", are left alone.
+     * @param directory directory to delete files from
+     * @param maxBytes limit on the total size of the files, in bytes
+     */
+    static void evict(File directory, long maxBytes) {
+        File[] files = directory.listFiles(file -> file.isFile() && !file.getName().endsWith(".part"));
+        if (files == null) return;
+        long total = 0;
+        for (File file : files) total += file.length();
+        if (total <= maxBytes) return;
+
+        long[] lastUsed = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lastUsed[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> lastUsed[i]));
+        for (int i = 0; i < order.length && total > maxBytes; i++) {
+            File file = files[order[i]];
+            long length = file.length();
+            if (file.delete()) total -= length;
+        }
+    }
+
+    /**
+     * @return the file that the results stored under a key are kept in
+     */
+    private File entryFile(String key) {
+        return new File(directory, key + "." + ResultSnapshot.EXTENSION);
+    }
+
+    /**
+     * Marks a file as just used, for the eviction order.
+     */
+    static void touch(File file) {
+        //noinspection ResultOfMethodCallIgnored
+        file.setLastModified(System.currentTimeMillis());
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e); // every Java platform is required to support SHA-256
+        }
+    }
+
+    /**
+     * @param directory directory to keep results in
+     * @param maxBytes limit on the total size of the cache, in bytes
+     */
+    private ResultCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+}
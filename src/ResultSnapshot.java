@@ -0,0 +1,207 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads and writes the results of a scan in a compact binary format, so that they can be archived and loaded again
+ * without scanning the file again.
+ * <p>
+ * A snapshot starts with a header holding the totals of the scan, followed by every keyword in alphabetical order.
+ * The keywords are front-coded: each one is stored as the number of bytes it shares with the keyword before it,
+ * followed by the rest of its UTF-8 bytes. Lengths and counts are stored as varints, which take a single byte for
+ * values below 128.
+ */
+public class ResultSnapshot {
+
+    public static final String EXTENSION = "tags"; // file extension of snapshot files
+
+    static final int MAGIC = 0x5458534E; // "TXSN", marks the start of every snapshot file
+    static final int VERSION = 1; // changed whenever the layout of the file changes
+    static final int BUFFER_SIZE = 1 << 16; // number of bytes written to the channel at a time
+
+    private final FileChannel channel;
+    private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /**
+     * Writes the results held by a WordCounter to a snapshot file, replacing anything already in it.
+     * @param wordCounter results to write
+     * @param file file to write to
+     */
+    static void write(WordCounter wordCounter, File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            new ResultSnapshot(channel).write(wordCounter.tally);
+        }
+    }
+
+    /**
+     * Loads a snapshot file by memory-mapping it.
+     * @param file snapshot file to read
+     * @return a WordTally holding the keywords, counts and totals in the snapshot
+     * @throws IOException if the file can't be read or isn't a snapshot
+     */
+    static WordTally read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("snapshot is too large: " + file);
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                if (in.getInt() != MAGIC) throw new IOException("not a snapshot file: " + file);
+                int version = in.getInt();
+                if (version != VERSION) throw new IOException("unsupported snapshot version " + version + ": " + file);
+
+                WordTally tally = new WordTally(null);
+                tally.characterCount = in.getLong();
+                tally.totalWords = in.getLong();
+                tally.totalKeywords = in.getLong();
+                tally.totalStopWords = in.getLong();
+                tally.maxWordLen = in.getInt();
+                int size = in.getInt();
+                if (size < 0) throw new IOException("corrupt snapshot: " + file);
+
+                byte[] word = new byte[64];
+                int length = 0; // number of bytes in the keyword before this one
+                for (int i = 0; i < size; i++) {
+                    int shared = readVarint(in), suffix = readVarint(in);
+                    // a keyword can't share more than the whole keyword before it, or run past the end of the file
+                    if (shared < 0 || shared > length || suffix < 0 || suffix > in.remaining()) {
+                        throw new IOException("corrupt snapshot: " + file);
+                    }
+                    length = shared + suffix;
+                    if (length > word.length) word = Arrays.copyOf(word, Math.max(word.length * 2, length));
+                    in.get(word, shared, suffix);
+                    tally.wordMap.add(new String(word, 0, length, StandardCharsets.UTF_8), readVarLong(in));
+                }
+                return tally;
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                throw new IOException("corrupt snapshot: " + file, e);
+            }
+        }
+    }
+
+    /**
+     * @param channel channel to write the snapshot to
+     */
+    private ResultSnapshot(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Writes the header and then every keyword, flushing the buffer to the channel whenever it fills up.
+     * @param tally keywords, counts and totals to write
+     */
+    private void write(WordTally tally) throws IOException {
+        buf.putInt(MAGIC);
+        buf.putInt(VERSION);
+        buf.putLong(tally.characterCount);
+        buf.putLong(tally.totalWords);
+        buf.putLong(tally.totalKeywords);
+        buf.putLong(tally.totalStopWords);
+        buf.putInt(tally.maxWordLen);
+        buf.putInt(tally.wordMap.size());
+
+        byte[][] previous = {new byte[0]}; // the last keyword written, for working out the shared prefix
+        try {
+            tally.wordMap.forEachSorted((word, count) -> {
+                byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+                byte[] last = previous[0];
+                int shared = 0, max = Math.min(bytes.length, last.length);
+                while (shared < max && bytes[shared] == last[shared]) shared++;
+                try {
+                    ensureRemaining(15);
+                    putVarint(shared);
+                    putVarint(bytes.length - shared);
+                    put(bytes, shared, bytes.length - shared);
+                    ensureRemaining(10);
+                    putVarLong(count);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                previous[0] = bytes;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        flush();
+    }
+
+    /**
+     * Copies bytes into the buffer, flushing it as often as needed for bytes that don't fit.
+     */
+    private void put(byte[] bytes, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!buf.hasRemaining()) flush();
+            int n = Math.min(len, buf.remaining());
+            buf.put(bytes, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Writes a non-negative int using 7 bits per byte, with the high bit set on every byte but the last.
+     */
+    private void putVarint(int value) {
+        putVarLong(value);
+    }
+
+    /**
+     * Writes a non-negative long the same way as {@link #putVarint(int)}, so that values that fit in an int are
+     * written exactly as an int would be.
+     */
+    private void putVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    /**
+     * Reads an int written by {@link #putVarint(int)}.
+     */
+    static int readVarint(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("malformed varint");
+    }
+
+    /**
+     * Reads a long written by {@link #putVarLong(long)}.
+     */
+    static long readVarLong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("malformed varint");
+    }
+
+    /**
+     * Flushes the buffer if it has fewer than the given number of bytes left.
+     */
+    private void ensureRemaining(int bytes) throws IOException {
+        if (buf.remaining() < bytes) flush();
+    }
+
+    /**
+     * Writes everything in the buffer to the channel and empties it.
+     */
+    private void flush() throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) channel.write(buf);
+        buf.clear();
+    }
+}
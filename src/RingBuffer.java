@@ -0,0 +1,95 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded queue that hands items from one thread to another without locking, for connecting the stages of a
+ * {@link PipelinedScanner}. Only one thread may take items out, and either one thread or several may put them in,
+ * depending on how the ring was created. Neither side ever waits inside the ring: {@link #offer(Object)} fails when the
+ * ring is full and {@link #poll()} when it is empty, and the caller decides how to wait.
+ * <p>
+ * Items go into the slots in turn, each producer claiming the next slot by moving {@link #tail} and then filling it.
+ * The consumer takes the item in the slot at {@link #head} once it has been filled, empties the slot and moves the
+ * head on, so a slot only becomes free once its item has been taken. A ring with a single producer claims its slots
+ * without compare-and-set, and only reads the head again when the copy it last read says the ring is full.
+ * @param <E> type of the items passed through the ring
+ */
+public class RingBuffer<E> {
+
+    private final AtomicReferenceArray<E> slots; // the item in each slot, or null if it is free or not yet filled
+    private final int capacity; // number of slots, a power of two
+    private final boolean multipleProducers; // whether producers claim slots with compare-and-set
+    private final AtomicLong head = new AtomicLong(); // number of items taken so far, only moved by the consumer
+    private final AtomicLong tail = new AtomicLong(); // number of slots claimed so far, moved by the producers
+    private long knownHead; // the head as the single producer last read it, which is never ahead of the real one
+
+    /**
+     * @param capacity number of items the ring can hold, which is rounded up to a power of two
+     * @param multipleProducers whether several threads may put items in at once
+     */
+    private RingBuffer(int capacity, boolean multipleProducers) {
+        this.capacity = Math.max(2, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+        this.multipleProducers = multipleProducers;
+        slots = new AtomicReferenceArray<>(this.capacity);
+    }
+
+    /**
+     * Creates a ring for passing items from one thread to another.
+     * @param capacity number of items the ring can hold, which is rounded up to a power of two
+     * @return a new, empty RingBuffer
+     */
+    public static <E> RingBuffer<E> createSingleProducerRing(int capacity) {
+        return new RingBuffer<>(capacity, false);
+    }
+
+    /**
+     * Creates a ring for passing items from several threads to one.
+     * @param capacity number of items the ring can hold, which is rounded up to a power of two
+     * @return a new, empty RingBuffer
+     */
+    public static <E> RingBuffer<E> createMultiProducerRing(int capacity) {
+        return new RingBuffer<>(capacity, true);
+    }
+
+    /**
+     * Puts an item into the ring, unless it is full.
+     * @param item item to put in, which must not be null
+     * @return true if the item was put in, or false if the ring was full
+     */
+    public boolean offer(E item) {
+        long slot;
+        if (multipleProducers) {
+            do {
+                slot = tail.get();
+                if (slot - head.getAcquire() >= capacity) return false;
+            } while (!tail.compareAndSet(slot, slot + 1));
+        } else {
+            slot = tail.getPlain();
+            if (slot - knownHead >= capacity && slot - (knownHead = head.getAcquire()) >= capacity) return false;
+            tail.setPlain(slot + 1);
+        }
+        // publishes the item, which the consumer only takes once it sees it in the slot
+        slots.setRelease((int) slot & (capacity - 1), item);
+        return true;
+    }
+
+    /**
+     * Takes the oldest item out of the ring. Must only be called by the consumer.
+     * @return the item, or null if the ring is empty or the next item's slot hasn't been filled yet
+     */
+    public E poll() {
+        long next = head.getPlain();
+        int slot = (int) next & (capacity - 1);
+        E item = slots.getAcquire(slot);
+        if (item == null) return null;
+        slots.setPlain(slot, null);
+        head.setRelease(next + 1); // frees the slot, after emptying it
+        return item;
+    }
+
+    /**
+     * @return the number of items the ring can hold
+     */
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,241 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Saves the state of a scan that reached the end of a file, so that the next scan of the file only has to scan what
+ * was appended since. A checkpoint holds the byte offset the scan stopped at, the word it left unfinished, the counts
+ * and totals collected so far, and a {@link Fingerprint} of the file.
+ * <p>
+ * The fingerprint is a SHA-256 hash of every byte before the offset, which the scan works out as it goes, so that the
+ * file is only read once. Along with it go the size and modification time of the file, and a file that still has
+ * both is taken to be unchanged without hashing it again. Otherwise the bytes before the offset are hashed again, and
+ * if they have changed anywhere, or the file is now shorter than the offset, the checkpoint is ignored.
+ * <p>
+ * The directory is kept under {@link #MAX_BYTES} by deleting the least recently used checkpoints whenever one is
+ * saved, the same way as a {@link ResultCache}.
+ */
+public class ScanCheckpoint {
+
+    public static final File DEFAULT_DIRECTORY = new File(System.getProperty("user.home")
+            + "//.tagextractor//checkpoints");
+
+    static final int MAGIC = 0x54584350; // "TXCP", marks the start of every checkpoint file
+    static final int VERSION = 4; // changed whenever the layout of the file changes
+    static final int HASH_LENGTH = 32; // number of bytes in the fingerprint's hash
+    static final long MAX_BYTES = 256L << 20; // limit on the total size of the checkpoints in a directory
+
+    /**
+     * Gets the file that holds the checkpoint for a target file.
+     * @param directory directory that checkpoints are kept in
+     * @param target file that was scanned
+     * @return the checkpoint file, which may not exist yet
+     */
+    static File fileFor(File directory, File target) {
+        String path = target.getAbsolutePath();
+        return new File(directory, target.getName() + "-" + Integer.toHexString(path.hashCode()) + ".checkpoint");
+    }
+
+    /**
+     * Loads a checkpoint into an empty tally, if one exists and still matches the file.
+     * @param checkpoint checkpoint file to read
+     * @param target file being scanned
+     * @param channel open channel of the file being scanned
+     * @param charset charset the file is being decoded with
+     * @param skip number of characters skipped at the start of the file
+     * @param tokenization how words are being read, as described by {@link ScanOptions#tokenization()}
+     * @param tally empty WordTally to load the saved counts into
+     * @param scanner MappedScanner to give the unfinished word to
+     * @param fingerprint Fingerprint of the file being scanned, which is checked against the saved one
+     * @return the byte offset to carry on scanning from, or -1 if there is no usable checkpoint
+     */
+    static long load(File checkpoint, File target, FileChannel channel, Charset charset, long skip,
+                     String tokenization, WordTally tally, MappedScanner scanner, Fingerprint fingerprint) {
+        if (!checkpoint.isFile()) return -1;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(checkpoint)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return -1;
+            if (!in.readUTF().equals(target.getAbsolutePath()) || !in.readUTF().equals(charset.name())) return -1;
+            if (in.readLong() != tally.stopFilter.fingerprint() || in.readLong() != skip) return -1;
+            if (!in.readUTF().equals(tokenization)) return -1;
+
+            long offset = in.readLong();
+            long size = in.readLong(), modified = in.readLong();
+            byte[] hash = new byte[HASH_LENGTH];
+            in.readFully(hash);
+            if (offset < 0 || offset > channel.size()) return -1;
+            // a file with the same size and modification time is taken to be unchanged, without hashing it again
+            boolean unchanged = size == fingerprint.size && modified == fingerprint.modified;
+            if (!unchanged && !Arrays.equals(hash, fingerprint.hashTo(offset))) return -1;
+
+            char[] pending = readChars(in);
+            WordTally saved = new WordTally(tally.stopFilter);
+            saved.maxWordLen = in.readInt();
+            saved.characterCount = in.readLong();
+            saved.totalWords = in.readLong();
+            saved.totalKeywords = in.readLong();
+            saved.totalStopWords = in.readLong();
+            for (int i = in.readInt(); i > 0; i--) saved.wordMap.add(new String(readChars(in)), in.readLong());
+
+            // only touches the tally once the whole checkpoint has been read, so a damaged file leaves it empty
+            tally.merge(saved);
+            scanner.setPendingWord(pending);
+            ResultCache.touch(checkpoint);
+            return offset;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Saves a checkpoint, replacing any earlier one for the same file, then deletes the least recently used
+     * checkpoints if the directory has grown past {@link #MAX_BYTES}. A checkpoint only saves time on later scans, so
+     * if it can't be written the scan carries on without one.
+     * @param checkpoint checkpoint file to write
+     * @param target file being scanned
+     * @param fingerprint Fingerprint of the file being scanned, which has hashed the file up to the offset
+     * @param charset charset the file is being decoded with
+     * @param skip number of characters skipped at the start of the file
+     * @param tokenization how words are being read, as described by {@link ScanOptions#tokenization()}
+     * @param offset byte offset that the scan reached
+     * @param pending word left unfinished at the offset
+     * @param tally counts and totals collected up to the offset
+     */
+    static void save(File checkpoint, File target, Fingerprint fingerprint, Charset charset, long skip,
+                     String tokenization, long offset, char[] pending, WordTally tally) {
+        File directory = checkpoint.getAbsoluteFile().getParentFile();
+        File partial = new File(directory, checkpoint.getName() + ".part");
+        try {
+            Files.createDirectories(directory.toPath());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream
+                    (new FileOutputStream(partial)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(target.getAbsolutePath());
+                out.writeUTF(charset.name());
+                out.writeLong(tally.stopFilter.fingerprint());
+                out.writeLong(skip);
+                out.writeUTF(tokenization);
+                out.writeLong(offset);
+                out.writeLong(fingerprint.size);
+                out.writeLong(fingerprint.modified);
+                out.write(fingerprint.hashTo(offset));
+
+                writeChars(out, pending);
+                out.writeInt(tally.maxWordLen);
+                out.writeLong(tally.characterCount);
+                out.writeLong(tally.totalWords);
+                out.writeLong(tally.totalKeywords);
+                out.writeLong(tally.totalStopWords);
+                out.writeInt(tally.wordMap.size());
+                tally.wordMap.forEach((word, count) -> {
+                    try {
+                        writeChars(out, word.toCharArray());
+                        out.writeLong(count);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            // replaces the old checkpoint in one step, so that a scan never reads a half-written one
+            Files.move(partial.toPath(), checkpoint.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            ResultCache.evict(directory, MAX_BYTES);
+        } catch (IOException | UncheckedIOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            partial.delete();
+        }
+    }
+
+    private static void writeChars(DataOutputStream out, char[] chars) throws IOException {
+        out.writeInt(chars.length);
+        for (char c : chars) out.writeChar(c);
+    }
+
+    private static char[] readChars(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("bad length " + length);
+        char[] chars = new char[length];
+        for (int i = 0; i < chars.length; i++) chars[i] = in.readChar();
+        return chars;
+    }
+
+    /**
+     * Private constructor
+     */
+    private ScanCheckpoint() {
+
+    }
+
+    /**
+     * A SHA-256 hash of a file from its first byte up to the point a scan has reached. The {@link MappedScanner}
+     * scanning the file adds each slice of bytes to it as the slice is scanned, so the bytes are hashed while they are
+     * still in the cache rather than read again for the checkpoint. Bytes that the scanner doesn't pass through, such
+     * as a skipped header or the chunks scanned by a {@link ParallelScanner}, are read from the file once the hash has
+     * to move past them.
+     */
+    static final class Fingerprint {
+
+        final long size; // size of the file when the scan started
+        final long modified; // modification time of the file when the scan started
+        private final FileChannel channel;
+        private final MessageDigest digest = ResultCache.sha256();
+        private long length = 0; // number of bytes from the start of the file hashed so far
+
+        /**
+         * @param target file being scanned
+         * @param channel open channel of the file being scanned
+         */
+        Fingerprint(File target, FileChannel channel) throws IOException {
+            this.channel = channel;
+            // reads the time first, so that a file changed in between is never saved as unchanged
+            modified = target.lastModified();
+            size = channel.size();
+        }
+
+        /**
+         * Adds bytes of the file to the hash, first reading any bytes before them that haven't been hashed yet. Bytes
+         * that were already hashed are left out. The buffer itself is left as it is.
+         * @param bytes the bytes of the file between the buffer's position and limit
+         * @param offset byte offset in the file of the byte at the buffer's position
+         */
+        void update(ByteBuffer bytes, long offset) throws IOException {
+            readTo(offset);
+            if (offset + bytes.remaining() <= length) return;
+            ByteBuffer rest = bytes.duplicate();
+            rest.position(rest.position() + (int) (length - offset));
+            length += rest.remaining();
+            digest.update(rest);
+        }
+
+        /**
+         * Hashes the file up to an offset, leaving the Fingerprint free to carry on past it.
+         * @param offset byte offset to hash up to, which must not be before the bytes already hashed
+         * @return the hash of every byte of the file before the offset
+         */
+        byte[] hashTo(long offset) throws IOException {
+            readTo(offset);
+            if (length != offset) throw new IllegalStateException("already hashed past " + offset);
+            try {
+                return ((MessageDigest) digest.clone()).digest();
+            } catch (CloneNotSupportedException e) {
+                throw new RuntimeException(e); // the SHA-256 of every Java platform can be cloned
+            }
+        }
+
+        /**
+         * Reads and hashes the bytes of the file that haven't been hashed yet, up to an offset.
+         */
+        private void readTo(long offset) throws IOException {
+            while (length < offset) {
+                long count = Math.min(MappedScanner.WINDOW_SIZE, offset - length);
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, length, count));
+                length += count;
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+import java.io.File;
+import java.nio.charset.Charset;
+import java.text.Normalizer;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Settings that control how {@link WordCounter} scans a file. The setters return this instance, so that settings can
+ * be chained together, e.g. {@code new ScanOptions().scanMode(ScanMode.PARALLEL).threads(8)}.
+ */
+public class ScanOptions {
+
+    WordCounter.ScanMode scanMode = WordCounter.DEFAULT_SCAN_MODE; // engine to scan the file with
+    boolean scanModeChosen = false; // whether scanMode was set, rather than left at its default
+    int threads = Runtime.getRuntime().availableProcessors(); // number of threads used by the parallel engine
+    ForkJoinPool pool = null; // pool for the parallel engine to run on, or null to pick one based on the threads
+    File checkpointDirectory = null; // where scan checkpoints are kept, or null to always scan from the start
+    ResultCache resultCache = null; // where results are looked up before scanning and stored after, or null for none
+    Charset charset = null; // charset that files are decoded with, or null to detect it from each file
+    BlockTokenizer.CaseFolding caseFolding = BlockTokenizer.CaseFolding.LOWER; // how letters are folded
+    Normalizer.Form normalization = null; // form that words are put into, or null to leave them as they are
+    int phraseLength = 0; // longest phrase counted, in keywords, or 0 to only count single keywords
+    int maxPhrases = PhraseTally.DEFAULT_MAX_PHRASES; // number of phrases each tally keeps before pruning
+    StemCache stemCache = null; // stems keywords before they are counted, or null to count them as they are written
+    boolean sharedCounts = false; // whether the chunks of a parallel scan count into one shared table
+
+    /**
+     * @param scanMode engine to scan the file with. {@link CorpusScanner} only picks an engine for each file itself
+     *                 when this is never set
+     * @return this ScanOptions
+     */
+    public ScanOptions scanMode(WordCounter.ScanMode scanMode) {
+        this.scanMode = scanMode;
+        scanModeChosen = true;
+        return this;
+    }
+
+    /**
+     * @param threads number of threads used by {@link WordCounter.ScanMode#PARALLEL}
+     * @return this ScanOptions
+     */
+    public ScanOptions threads(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be at least 1: " + threads);
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @param pool pool for {@link WordCounter.ScanMode#PARALLEL} to run on, instead of one chosen based on
+     *             {@link #threads(int)}
+     * @return this ScanOptions
+     */
+    public ScanOptions pool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * Turns on checkpoints. After each scan, the point it reached is saved in the given directory, and the next scan of
+     * the same file only scans what has been appended to it since, as long as the rest of the file is unchanged.
+     * @param checkpointDirectory directory to keep checkpoints in, or null to always scan files from the start
+     * @return this ScanOptions
+     * @see ScanCheckpoint
+     */
+    public ScanOptions checkpointDirectory(File checkpointDirectory) {
+        this.checkpointDirectory = checkpointDirectory;
+        return this;
+    }
+
+    /**
+     * Turns on the result cache. Before scanning a file, its contents are looked up in the cache, and if the same
+     * contents were scanned before with the same stop words, the saved results are used instead of scanning again.
+     * @param resultCache cache to use, or null to always scan
+     * @return this ScanOptions
+     */
+    public ScanOptions resultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+        return this;
+    }
+
+    /**
+     * @param charset charset that files are decoded with, or null to detect it from the start of each file
+     * @return this ScanOptions
+     * @see TextEncoding
+     */
+    public ScanOptions charset(Charset charset) {
+        this.charset = charset;
+        return this;
+    }
+
+    /**
+     * Not used by {@link WordCounter.ScanMode#CHARACTER}, which always reads words the original way.
+     * @param caseFolding how letters are folded before words are counted
+     * @return this ScanOptions
+     */
+    public ScanOptions caseFolding(BlockTokenizer.CaseFolding caseFolding) {
+        this.caseFolding = caseFolding;
+        return this;
+    }
+
+    /**
+     * Puts every word into a Unicode normalization form before it is counted, so that words written with different
+     * sequences of characters that look the same, such as a precomposed accented letter and the letter followed by a
+     * combining accent, are counted as the same word. Not used by {@link WordCounter.ScanMode#CHARACTER}.
+     * @param normalization normalization form, or null to count words as they are written
+     * @return this ScanOptions
+     */
+    public ScanOptions normalization(Normalizer.Form normalization) {
+        this.normalization = normalization;
+        return this;
+    }
+
+    /**
+     * Turns on counting phrases: runs of keywords in a row with no stop word between them, from two keywords long up
+     * to the given length. Checkpoints and the result cache only hold the counts of single keywords, so neither is
+     * used while phrases are counted.
+     * @param phraseLength longest phrase to count, in keywords, such as 3 for both pairs and triples, or 0 to only
+     *                     count single keywords
+     * @return this ScanOptions
+     * @see PhraseTally
+     */
+    public ScanOptions phrases(int phraseLength) {
+        if (phraseLength != 0 && phraseLength < 2)
+            throw new IllegalArgumentException("phrases must be at least 2 keywords long: " + phraseLength);
+        this.phraseLength = phraseLength;
+        return this;
+    }
+
+    /**
+     * Bounds the memory used for counting phrases. Each tally, one per file and one per chunk being scanned at once,
+     * keeps at most this many phrases; when it would hold more, the least frequent are pruned and from then on
+     * estimated by a sketch.
+     * @param maxPhrases number of phrases each tally keeps before pruning
+     * @return this ScanOptions
+     */
+    public ScanOptions maxPhrases(int maxPhrases) {
+        if (maxPhrases < 2) throw new IllegalArgumentException("maxPhrases must be at least 2: " + maxPhrases);
+        this.maxPhrases = maxPhrases;
+        return this;
+    }
+
+    /**
+     * Turns on stemming, so that different forms of the same word are counted as one keyword under their stem. Stop
+     * words are filtered out before stemming. Unlike folding and normalization, this is also used by
+     * {@link WordCounter.ScanMode#CHARACTER}. The stems are cached, and copies of these options share the cache, so
+     * every file of a corpus uses it too.
+     * @param stemmer Stemmer to reduce keywords with, or null to count keywords as they are written
+     * @return this ScanOptions
+     * @see StemCache
+     */
+    public ScanOptions stemmer(Stemmer stemmer) {
+        stemCache = stemmer != null ? new StemCache(stemmer, StemCache.DEFAULT_CAPACITY) : null;
+        return this;
+    }
+
+    /**
+     * Makes {@link WordCounter.ScanMode#PARALLEL} count the keywords of every chunk into one
+     * {@link ConcurrentWordCountTable}, rather than each chunk into a table of its own that is merged at the end. The
+     * counts are the same either way, but a file with a huge vocabulary then only needs room for it once, rather than
+     * once for every chunk being scanned at the same time.
+     * @param sharedCounts whether chunks count into a shared table
+     * @return this ScanOptions
+     */
+    public ScanOptions sharedCounts(boolean sharedCounts) {
+        this.sharedCounts = sharedCounts;
+        return this;
+    }
+
+    /**
+     * @return true if words are read by {@link CharTokenizer}, which ignores the folding and normalization settings.
+     *         It is only used when checkpoints are off, since checkpoints need one of the memory-mapped engines
+     */
+    boolean originalTokenizer() {
+        return scanMode == WordCounter.ScanMode.CHARACTER && checkpointDirectory == null;
+    }
+
+    /**
+     * @return a description of how words are read with these settings, which differs whenever the words would, for
+     *         telling whether saved results were read the same way
+     */
+    String tokenization() {
+        return (originalTokenizer() ? "CHARACTER" : caseFolding + "|" + normalization)
+                + (stemCache == null ? "" : "|" + stemCache.stemmer.name());
+    }
+
+    /**
+     * @return a new ScanOptions with the same settings as this one
+     */
+    public ScanOptions copy() {
+        ScanOptions copy = new ScanOptions();
+        copy.scanMode = scanMode;
+        copy.scanModeChosen = scanModeChosen;
+        copy.threads = threads;
+        copy.pool = pool;
+        copy.checkpointDirectory = checkpointDirectory;
+        copy.resultCache = resultCache;
+        copy.charset = charset;
+        copy.caseFolding = caseFolding;
+        copy.normalization = normalization;
+        copy.phraseLength = phraseLength;
+        copy.maxPhrases = maxPhrases;
+        copy.stemCache = stemCache;
+        copy.sharedCounts = sharedCounts;
+        return copy;
+    }
+}
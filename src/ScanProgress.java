@@ -0,0 +1,141 @@
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tracks how far a scan has gotten, and lets another thread cancel it. The scanning threads report the bytes,
+ * characters and words they have processed every so often, and any thread can read these at any time without locking.
+ * <p>
+ * If {@link #showLiveResults(long)} is called before the scan starts, each {@link WordTally} also publishes its counts
+ * at most once per refresh interval, for {@link #getLiveResults()} to show before the scan finishes. The published
+ * counts are kept in an immutable map that is replaced as a whole, so publishing never blocks the scanning threads and
+ * reading never blocks the Event Dispatch Thread.
+ */
+public class ScanProgress {
+
+    private final AtomicLong bytesProcessed = new AtomicLong();
+    private final AtomicLong charactersProcessed = new AtomicLong();
+    private final AtomicLong wordsProcessed = new AtomicLong();
+    private volatile long totalBytes = 0; // size of the file being scanned
+    private volatile long startTime = System.nanoTime(); // when the scan started, in nanoseconds
+    private volatile boolean cancelled = false;
+    private volatile long liveResultsInterval = 0; // nanoseconds between publications of each tally, or 0 for none
+    // the counts each tally last published, by its publication, replaced as a whole whenever a tally publishes
+    private final AtomicReference<Map<Object, LiveResults>> published = new AtomicReference<>(Map.of());
+
+    /**
+     * Marks the start of a scan.
+     * @param totalBytes size of the file being scanned
+     */
+    void start(long totalBytes) {
+        this.totalBytes = totalBytes;
+        startTime = System.nanoTime();
+    }
+
+    /**
+     * Reports bytes that have been scanned, and stops the scan if it has been canceled.
+     * @param count number of bytes scanned since the last report
+     * @throws CancellationException if {@link #cancel()} has been called
+     */
+    void addBytes(long count) {
+        bytesProcessed.addAndGet(count);
+        if (cancelled) throw new CancellationException("Scan canceled");
+    }
+
+    /**
+     * Reports words that have been scanned.
+     * @param count number of words scanned since the last report
+     */
+    void addWords(long count) {
+        wordsProcessed.addAndGet(count);
+    }
+
+    /**
+     * Reports characters that have been scanned.
+     * @param count number of characters scanned since the last report
+     */
+    void addCharacters(long count) {
+        charactersProcessed.addAndGet(count);
+    }
+
+    /**
+     * Asks the tallies of the scan to publish their counts, so that results can be shown while it runs.
+     * @param refreshMillis least number of milliseconds between two publications of the same tally
+     */
+    public void showLiveResults(long refreshMillis) {
+        liveResultsInterval = TimeUnit.MILLISECONDS.toNanos(Math.max(1, refreshMillis));
+    }
+
+    /**
+     * @return the least number of nanoseconds between two publications of the same tally, or 0 if tallies shouldn't
+     * publish their counts
+     */
+    long getLiveResultsInterval() {
+        return liveResultsInterval;
+    }
+
+    /**
+     * Publishes the counts of a tally, replacing the ones it published last.
+     * @param publication {@link WordTally#publication} of the tally the counts belong to
+     * @param results counts of the tally
+     * @param merged publications of the tallies that have been merged into this one, which are withdrawn at the same
+     *               time so that their counts aren't counted twice
+     */
+    void publish(Object publication, LiveResults results, Collection<Object> merged) {
+        Map<Object, LiveResults> current, next;
+        do {
+            current = published.get();
+            next = new IdentityHashMap<>(current);
+            next.put(publication, results);
+            for (Object other : merged) next.remove(other);
+        } while (!published.compareAndSet(current, next));
+    }
+
+    /**
+     * Combines the counts published so far by every tally of the scan.
+     * @return the LiveResults of the scan, which hold no words until the first tally publishes
+     * @see #showLiveResults(long)
+     */
+    public LiveResults getLiveResults() {
+        return LiveResults.combine(published.get().values(), charactersProcessed.get());
+    }
+
+    /**
+     * Asks the scan to stop. The scanning threads stop the next time they report their progress.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public long getBytesProcessed() {
+        return bytesProcessed.get();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getCharactersProcessed() {
+        return charactersProcessed.get();
+    }
+
+    public long getWordsProcessed() {
+        return wordsProcessed.get();
+    }
+
+    /**
+     * @return the average number of words scanned per second since the scan started
+     */
+    public double getWordsPerSecond() {
+        long elapsed = System.nanoTime() - startTime;
+        return elapsed <= 0 ? 0 : wordsProcessed.get() * 1e9 / elapsed;
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.Arrays;
+
+/**
+ * Remembers the stems of the words a {@link Stemmer} has seen most recently, so that a word's stem is only worked out
+ * once however many times the word appears. Lookups go straight from the tokenizer's buffer, so a word that is already
+ * cached costs a hash and a comparison or two, with nothing allocated.
+ * <p>
+ * The cache holds a fixed number of words in pairs of slots, and each word can only go in the pair picked by its hash.
+ * A new word takes over the slot of the pair that was used less recently, so two common words that share a pair are
+ * both kept, and only a third one pushes the rarer of them out. Since the words of a text are heavily skewed towards a
+ * few common ones, those stay cached nearly all the time, and only rare words are stemmed again.
+ * <p>
+ * One cache is shared by every thread of a scan, and by every file of a corpus, so each word is stemmed once for all
+ * of them. Entries never change once they are made and their fields are final, so a thread always sees an entry
+ * written by another one whole, without locking. Two threads that miss on the same word at once both stem it, and one
+ * of the entries is kept.
+ */
+public class StemCache {
+
+    static final int DEFAULT_CAPACITY = 1 << 16; // number of words cached, which must be a power of two
+
+    final Stemmer stemmer;
+    private final Entry[] entries; // the entry in each slot, or null if the slot is empty
+    // for each pair, whether its second slot was used more recently than its first, only written when it changes so
+    // that threads reading the same common words don't keep taking the memory holding it from each other
+    private final boolean[] secondUsed;
+    private final int mask; // capacity / 2 - 1, for turning a hash into a pair
+
+    /**
+     * @param stemmer Stemmer to work out the stems of words that aren't cached
+     * @param capacity number of words to cache, which must be a power of two of at least 2
+     */
+    public StemCache(Stemmer stemmer, int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("capacity must be a power of two of at least 2: " + capacity);
+        this.stemmer = stemmer;
+        entries = new Entry[capacity];
+        secondUsed = new boolean[capacity / 2];
+        mask = capacity / 2 - 1;
+    }
+
+    /**
+     * Gets the stem of a word, working it out and caching it if it isn't cached already. Safe to call from several
+     * threads at once.
+     * @param buf buffer holding the word
+     * @param off index of the first character of the word
+     * @param len number of characters in the word
+     * @return the stem of the word, which must not be changed
+     */
+    public char[] stem(char[] buf, int off, int len) {
+        int hash = 0; // the same as String.hashCode() of the word
+        for (int i = off, end = off + len; i < end; i++) hash = 31 * hash + buf[i];
+        int pair = (hash ^ (hash >>> 16)) & mask, slot = pair << 1;
+
+        for (int way = 0; way < 2; way++) {
+            Entry entry = entries[slot + way];
+            if (entry != null && entry.hash == hash
+                    && Arrays.equals(entry.word, 0, entry.word.length, buf, off, off + len)) {
+                if (secondUsed[pair] != (way == 1)) secondUsed[pair] = way == 1;
+                return entry.stem;
+            }
+        }
+
+        // replaces whichever slot of the pair was used less recently
+        if (!secondUsed[pair]) slot++;
+        secondUsed[pair] = (slot & 1) == 1;
+        char[] word = Arrays.copyOfRange(buf, off, off + len);
+        Entry entry = new Entry(word, hash, stemmer.stem(new String(word)).toCharArray());
+        entries[slot] = entry;
+        return entry.stem;
+    }
+
+    /**
+     * A word and its stem.
+     */
+    private static final class Entry {
+
+        final char[] word;
+        final int hash; // hash of the word, for skipping most comparisons
+        final char[] stem;
+
+        Entry(char[] word, int hash, char[] stem) {
+            this.word = word;
+            this.hash = hash;
+            this.stem = stem;
+        }
+    }
+}
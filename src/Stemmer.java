@@ -0,0 +1,23 @@
+/**
+ * Reduces keywords to a stem, so that different forms of the same word, such as "vampire" and "vampires", are counted
+ * as one keyword. A {@link WordTally} passes each keyword through its stemmer after stop words have been filtered out,
+ * so stop words are always matched as they are written. Stemming is usually slow next to counting, so the tally looks
+ * the stem of each word up in a {@link StemCache} first, and only calls the stemmer for words that aren't in it.
+ * <p>
+ * Implementations must be safe to call from several threads at once, since every chunk of a parallel scan and every
+ * file of a corpus stems its words through the same cache.
+ */
+public interface Stemmer {
+
+    /**
+     * @param word keyword to stem, as read by the tokenizer
+     * @return the stem of the word, which may be the word itself
+     */
+    String stem(String word);
+
+    /**
+     * @return a name for the stemmer, which must change whenever the stems it gives do, for telling whether saved
+     *         results were stemmed the same way
+     */
+    String name();
+}
@@ -1,56 +1,384 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.Normalizer;
 import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * For scanning text files containing stop words.
+ * <p>
+ * Once the file is read, the stop words are compiled into an open-addressing hash table whose hashes match
+ * {@link String#hashCode()}. The words themselves are stored back to back in a single char array, so that words can be
+ * looked up straight from a tokenizer's buffer without creating a String, and a list of hundreds of thousands of words
+ * takes a handful of arrays rather than an object per word. A StopFilter never changes once it has been created, so
+ * one instance can be shared by any number of scans and threads.
+ * <p>
+ * The compiled table can be saved as a binary file with {@link #save(File)}, which is memory-mapped and copied
+ * straight into the arrays when loaded, without parsing anything. Compiled files are also kept in
+ * {@link #COMPILED_DIRECTORY} for every text file that is read, and filters are kept in memory for as long as the
+ * program runs, so a stop file is only parsed again once it has changed.
  */
-public class StopFilter extends BufferedReader {
+public class StopFilter {
 
-    HashSet<String> stopWords = new HashSet<>(); // for storing stop words
-    static StopFilter stopFilter;
+    public static final File DEFAULT_STOP_WORDS = new File(System.getProperty("user.dir") + "//stop//stopwords.txt");
+    public static final File COMPILED_DIRECTORY = new File(System.getProperty("user.home")
+            + "//.tagextractor//stopwords");
+    public static final String EXTENSION = "stops"; // file extension of compiled stop word files
+
+    static final int MAGIC = 0x54585357; // "TXSW", marks the start of every compiled stop word file
+    static final int VERSION = 2; // changed whenever the layout of the file or the way words are read changes
+    static final int HEADER_SIZE = 48; // number of bytes before the table in a compiled file
+
+    // filters that have already been created, by the path of their file, for reuse until the file changes
+    private static final ConcurrentHashMap<String, Loaded> loaded = new ConcurrentHashMap<>();
+
+    private final int[] hashes; // the hash of the stop word in each slot
+    private final int[] slots; // index + 1 of the stop word in each slot, or 0 for an empty slot
+    private final int[] wordStarts; // index in chars of the start of each word, followed by the end of the last one
+    private final char[] chars; // every stop word, back to back
+    private final int mask; // number of slots - 1, for turning a hash into a slot index
+    private final long fingerprint; // identifies the set of stop words, whatever order they were read in
+
+    private final long sourceSize, sourceModified; // size and modification time of the file the words came from
+
+    // filters holding these words as read with other tokenizer settings, by the settings
+    private final ConcurrentHashMap<String, StopFilter> variants = new ConcurrentHashMap<>();
 
     /**
-     * Creates a new instance of StopFilter that immediately scans a file passed as an argument and stores a list of
-     * stop words.
-     * @param wordFile File containing stop words for this instance to scan.
+     * Gets a StopFilter holding the stop words in a file. The file is either a text file, in which every word read by
+     * {@link BlockTokenizer} is a stop word, or a compiled file written by {@link #save(File)}. A filter already
+     * created for the same file is returned again if the file hasn't changed since.
+     * @param wordFile File containing stop words
      * @return an instance of StopFilter
      */
     public static StopFilter createStopFilter(File wordFile) throws FileNotFoundException {
-        stopFilter = new StopFilter(wordFile);
-        return stopFilter;
+        if (!wordFile.isFile()) throw new FileNotFoundException(wordFile.toString());
+        long size = wordFile.length(), modified = wordFile.lastModified();
+        Loaded last = loaded.get(wordFile.getAbsolutePath());
+        if (last != null && last.size == size && last.modified == modified) return last.filter;
+
+        StopFilter filter;
+        try {
+            filter = isCompiled(wordFile) ? load(wordFile) : compile(wordFile);
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        loaded.put(wordFile.getAbsolutePath(), new Loaded(filter, size, modified));
+        return filter;
     }
 
     /**
      * Checks whether a word appears in the list of stop words.
      *
-     * @param word StringBuilder containing a word
+     * @param word StringBuilder, or any other CharSequence, containing a word
+     * @return true if the word is not in the list of stop words
+     */
+    public boolean isKeyWord(CharSequence word) {
+        int len = word.length();
+        int hash = 0;
+        for (int i = 0; i < len; i++) hash = 31 * hash + word.charAt(i);
+
+        for (int slot = spread(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && matches(slots[slot] - 1, word)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a word appears in the list of stop words, reading it straight from a buffer.
+     *
+     * @param buf buffer holding the word
+     * @param off index of the first character of the word
+     * @param len number of characters in the word
      * @return true if the word is not in the list of stop words
      */
-    public boolean isKeyWord(StringBuilder word) {
-        return !stopWords.contains(word.toString());
+    public boolean isKeyWord(char[] buf, int off, int len) {
+        int hash = 0;
+        for (int i = off, end = off + len; i < end; i++) hash = 31 * hash + buf[i];
+
+        for (int slot = spread(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && matches(slots[slot] - 1, buf, off, len)) return false;
+        }
+        return true;
     }
 
     /**
-     * Reads a file and separates it line by line to compile and store a list of stop words.
-     * @param wordFile File containing stop words
+     * @return the number of stop words
+     */
+    public int size() {
+        return wordStarts.length - 1;
+    }
+
+    /**
+     * Gets a hash of the stop words, for telling whether saved results were counted with the same stop words. Two
+     * filters holding the same words have the same fingerprint.
+     * @return the fingerprint of the stop words
      */
-    private StopFilter(File wordFile) throws FileNotFoundException {
-        super(new InputStreamReader(new FileInputStream(wordFile)));
+    long fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Gets a StopFilter holding these stop words as they are read by a tokenizer with different settings, so that they
+     * match the words passed on by that tokenizer. The filter for each combination of settings is only created once.
+     * @param folding how the tokenizer folds letters
+     * @param normalization normalization form the tokenizer puts words into, or null for none
+     * @return a StopFilter, which is this one if the settings are the defaults that stop words are read with
+     */
+    StopFilter readAs(BlockTokenizer.CaseFolding folding, Normalizer.Form normalization) {
+        if (folding == BlockTokenizer.CaseFolding.LOWER && normalization == null) return this;
+        return variants.computeIfAbsent(folding + "|" + normalization, settings -> {
+            HashSet<String> words = new HashSet<>();
+            BlockTokenizer tokenizer = new BlockTokenizer(folding, normalization);
+            TokenHandler handler = (buf, off, len) -> words.add(new String(buf, off, len));
+            char[] separator = {' '};
+            for (int i = 0; i < size(); i++) {
+                tokenizer.scan(chars, wordStarts[i], wordStarts[i + 1] - wordStarts[i], handler);
+                tokenizer.scan(separator, 0, 1, handler);
+            }
+            return new StopFilter(words.toArray(new String[0]), sourceSize, sourceModified);
+        });
+    }
+
+    /**
+     * Saves the compiled table as a binary file, which can be passed to {@link #createStopFilter(File)} in place of
+     * the text file to skip parsing it. The file is written in full before it replaces anything already there.
+     * @param file file to write to
+     */
+    public void save(File file) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + (hashes.length * 2 + wordStarts.length) * Integer.BYTES
+                + chars.length * Character.BYTES);
+        buf.putInt(MAGIC).putInt(VERSION).putLong(fingerprint).putLong(sourceSize).putLong(sourceModified)
+                .putInt(size()).putInt(hashes.length).putInt(chars.length).putInt(0);
+        buf.asIntBuffer().put(hashes).put(slots).put(wordStarts);
+        buf.position(buf.position() + (hashes.length * 2 + wordStarts.length) * Integer.BYTES);
+        buf.asCharBuffer().put(chars);
+        buf.rewind();
+
+        File partial = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".part");
+        try (FileChannel channel = FileChannel.open(partial.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) channel.write(buf);
+        }
+        Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a text file of stop words and compiles it, using the compiled file kept in {@link #COMPILED_DIRECTORY}
+     * instead if it was compiled from the file as it is now.
+     * @param wordFile text file containing stop words
+     * @return an instance of StopFilter
+     */
+    private static StopFilter compile(File wordFile) throws IOException {
+        String path = wordFile.getAbsolutePath();
+        File compiled = new File(COMPILED_DIRECTORY, wordFile.getName() + "-" + Integer.toHexString(path.hashCode())
+                + "." + EXTENSION);
+        if (compiled.isFile()) {
+            try {
+                StopFilter filter = load(compiled);
+                if (filter.isCompiledFrom(wordFile)) return filter;
+            } catch (IOException ignored) {
+                // compiles the text file again below
+            }
+        }
+
+        long size = wordFile.length(), modified = wordFile.lastModified();
+        HashSet<String> words = new HashSet<>();
+        // reads the words the same way as the default tokenizer, so that they are in lowercase
+        BlockTokenizer tokenizer = new BlockTokenizer();
+        TokenHandler handler = (buf, off, len) -> words.add(new String(buf, off, len));
+        // detects the charset rather than using the platform's default, so that the words are the same everywhere
+        TextEncoding encoding = TextEncoding.detect(wordFile, null);
+        InputStream in = new BufferedInputStream(new FileInputStream(wordFile));
+        try (Reader reader = new InputStreamReader(in, encoding.charset)) {
+            in.skipNBytes(encoding.bomLength);
+            tokenizer.tokenize(reader, handler);
+        }
+        tokenizer.scan(new char[]{' '}, 0, 1, handler); // ends the last word, which has no character after it
 
+        StopFilter filter = new StopFilter(words.toArray(new String[0]), size, modified);
         try {
-            StringBuilder word = new StringBuilder();
-            while (ready()) {
-                char c = (char) read();
-                if (Character.isAlphabetic(c))
-                    word.append(c);
-                else {
-                    stopWords.add(word.toString());
-                    word.delete(0, word.length());
+            Files.createDirectories(COMPILED_DIRECTORY.toPath());
+            filter.save(compiled);
+        } catch (IOException ignored) {
+            // the text file is just parsed again next time
+        }
+        return filter;
+    }
+
+    /**
+     * Loads a compiled file written by {@link #save(File)}, memory-mapping it and copying the table straight into
+     * arrays.
+     * @param file compiled file to read
+     * @return an instance of StopFilter
+     * @throws IOException if the file can't be read or isn't a compiled stop word file
+     */
+    private static StopFilter load(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                if (in.getInt() != MAGIC) throw new IOException("not a compiled stop word file: " + file);
+                int version = in.getInt();
+                if (version != VERSION) throw new IOException("unsupported stop word file version " + version);
+                long fingerprint = in.getLong(), sourceSize = in.getLong(), sourceModified = in.getLong();
+                int words = in.getInt(), capacity = in.getInt(), length = in.getInt();
+                if (words < 0 || capacity <= words || Integer.bitCount(capacity) != 1 || length < 0
+                        || (long) HEADER_SIZE + (capacity * 2L + words + 1) * Integer.BYTES
+                        + (long) length * Character.BYTES != channel.size()) {
+                    throw new IOException("corrupt stop word file: " + file);
                 }
+
+                int[] hashes = new int[capacity], slots = new int[capacity], wordStarts = new int[words + 1];
+                char[] chars = new char[length];
+                in.position(HEADER_SIZE);
+                in.asIntBuffer().get(hashes).get(slots).get(wordStarts);
+                in.position(in.position() + (capacity * 2 + words + 1) * Integer.BYTES);
+                in.asCharBuffer().get(chars);
+
+                /*
+                Checks the table itself, so that lookups never index outside the arrays or probe forever: every slot
+                holds 0 or a word index plus one, each word is in exactly one slot, which leaves at least one slot
+                empty, and the words run from the start of the characters to the end without going backwards.
+                 */
+                int occupied = 0;
+                for (int slot : slots) {
+                    if (slot < 0 || slot > words) throw new IOException("corrupt stop word file: " + file);
+                    if (slot != 0) occupied++;
+                }
+                if (occupied != words || wordStarts[0] != 0 || wordStarts[words] != length) {
+                    throw new IOException("corrupt stop word file: " + file);
+                }
+                for (int i = 0; i < words; i++) {
+                    if (wordStarts[i + 1] < wordStarts[i]) throw new IOException("corrupt stop word file: " + file);
+                }
+                return new StopFilter(hashes, slots, wordStarts, chars, fingerprint, sourceSize, sourceModified);
+            } catch (RuntimeException e) {
+                throw new IOException("corrupt stop word file: " + file, e);
             }
-            close();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
         }
     }
+
+    /**
+     * @return true if the file starts with the marker of a compiled stop word file
+     */
+    private static boolean isCompiled(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return true if this filter was compiled from the text file as it is now
+     */
+    private boolean isCompiledFrom(File file) {
+        return file.length() == sourceSize && file.lastModified() == sourceModified;
+    }
+
+    /**
+     * Compiles a list of distinct stop words into the hash table used for lookups, keeping it at most half full.
+     * @param words the stop words, without duplicates
+     * @param sourceSize size of the file the words came from
+     * @param sourceModified modification time of the file the words came from
+     */
+    private StopFilter(String[] words, long sourceSize, long sourceModified) {
+        this.sourceSize = sourceSize;
+        this.sourceModified = sourceModified;
+
+        int capacity = Integer.highestOneBit(Math.max(1, words.length)) << 2;
+        hashes = new int[capacity];
+        slots = new int[capacity];
+        mask = capacity - 1;
+        wordStarts = new int[words.length + 1];
+        int length = 0;
+        for (String word : words) length += word.length();
+        chars = new char[length];
+
+        long fingerprint = 0;
+        for (int i = 0, start = 0; i < words.length; i++) {
+            String word = words[i];
+            word.getChars(0, word.length(), chars, start);
+            wordStarts[i] = start;
+            start += word.length();
+            wordStarts[i + 1] = start;
+
+            int hash = word.hashCode();
+            int slot = spread(hash) & mask;
+            while (slots[slot] != 0) slot = (slot + 1) & mask;
+            slots[slot] = i + 1;
+            hashes[slot] = hash;
+            fingerprint += mix(hash); // adds rather than chains the hashes, so that the order doesn't matter
+        }
+        this.fingerprint = fingerprint ^ words.length;
+    }
+
+    /**
+     * Creates a StopFilter around a table loaded from a compiled file.
+     */
+    private StopFilter(int[] hashes, int[] slots, int[] wordStarts, char[] chars, long fingerprint, long sourceSize,
+                       long sourceModified) {
+        this.hashes = hashes;
+        this.slots = slots;
+        this.wordStarts = wordStarts;
+        this.chars = chars;
+        this.mask = hashes.length - 1;
+        this.fingerprint = fingerprint;
+        this.sourceSize = sourceSize;
+        this.sourceModified = sourceModified;
+    }
+
+    /**
+     * A filter kept in memory, along with the size and modification time of its file when it was read.
+     */
+    private record Loaded(StopFilter filter, long size, long modified) {
+
+    }
+
+    /**
+     * Mixes the high bits of a hash into the low ones, since only the low bits pick the slot.
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Spreads a 32-bit hash over 64 bits, so that sums of many hashes rarely collide.
+     */
+    private static long mix(int hash) {
+        long h = hash * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * @return true if the stop word at the given index holds exactly the given characters
+     */
+    private boolean matches(int index, char[] buf, int off, int len) {
+        int start = wordStarts[index];
+        if (wordStarts[index + 1] - start != len) return false;
+        for (int i = 0; i < len; i++) {
+            if (chars[start + i] != buf[off + i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the stop word at the given index holds exactly the characters of the CharSequence
+     */
+    private boolean matches(int index, CharSequence word) {
+        int start = wordStarts[index], len = word.length();
+        if (wordStarts[index + 1] - start != len) return false;
+        for (int i = 0; i < len; i++) {
+            if (chars[start + i] != word.charAt(i)) return false;
+        }
+        return true;
+    }
 }
@@ -0,0 +1,110 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * How a file is decoded: the charset it is read with, and the length of the byte order mark at its start, which is
+ * skipped rather than read as a character.
+ * <p>
+ * Unless a charset is given, it is detected from the start of the file, so that a file gives the same results on every
+ * machine whatever the platform's default charset is. A byte order mark picks UTF-8, UTF-16BE or UTF-16LE. Without
+ * one, a file whose first {@link #SAMPLE_SIZE} bytes are valid UTF-8 (which includes plain ASCII) is read as UTF-8,
+ * and any other file as ISO-8859-1, which can decode any sequence of bytes.
+ */
+public final class TextEncoding {
+
+    static final int SAMPLE_SIZE = 1 << 16; // number of bytes at the start of a file that charsets are detected from
+
+    private static final byte[] UTF_8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+    private static final byte[] UTF_16BE_BOM = {(byte) 0xFE, (byte) 0xFF};
+    private static final byte[] UTF_16LE_BOM = {(byte) 0xFF, (byte) 0xFE};
+
+    final Charset charset; // charset the file is decoded with
+    final int bomLength; // number of bytes of byte order mark at the start of the file
+
+    /**
+     * Works out how to decode a file.
+     * @param file file to decode
+     * @param charset charset to decode the file with, or null to detect it
+     * @return the TextEncoding of the file
+     */
+    static TextEncoding detect(File file, Charset charset) throws IOException {
+        ByteBuffer sample = ByteBuffer.allocate(SAMPLE_SIZE);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            //noinspection StatementWithEmptyBody
+            while (sample.hasRemaining() && channel.read(sample) > 0) ;
+        }
+        sample.flip();
+
+        if (charset != null) {
+            // a byte order mark is only skipped if it belongs to the charset that was asked for
+            if (charset.equals(StandardCharsets.UTF_8) && startsWith(sample, UTF_8_BOM))
+                return new TextEncoding(charset, UTF_8_BOM.length);
+            if (charset.equals(StandardCharsets.UTF_16BE) && startsWith(sample, UTF_16BE_BOM)
+                    || charset.equals(StandardCharsets.UTF_16LE) && startsWith(sample, UTF_16LE_BOM))
+                return new TextEncoding(charset, 2);
+            return new TextEncoding(charset, 0);
+        }
+
+        if (startsWith(sample, UTF_8_BOM)) return new TextEncoding(StandardCharsets.UTF_8, UTF_8_BOM.length);
+        if (startsWith(sample, UTF_16BE_BOM)) return new TextEncoding(StandardCharsets.UTF_16BE, 2);
+        if (startsWith(sample, UTF_16LE_BOM)) return new TextEncoding(StandardCharsets.UTF_16LE, 2);
+        return new TextEncoding(isUtf8(sample, sample.limit() < SAMPLE_SIZE) ? StandardCharsets.UTF_8
+                : StandardCharsets.ISO_8859_1, 0);
+    }
+
+    /**
+     * Checks whether bytes are valid UTF-8, following the same rules as {@link BlockTokenizer#scanUtf8}.
+     * @param bytes bytes to check, from position to limit
+     * @param wholeFile whether the bytes are the whole file, rather than a sample that may end partway through a
+     *                  character
+     * @return true if the bytes hold no malformed sequences
+     */
+    static boolean isUtf8(ByteBuffer bytes, boolean wholeFile) {
+        int limit = bytes.limit();
+        for (int i = bytes.position(); i < limit; ) {
+            int b0 = bytes.get(i) & 0xFF;
+            if (b0 < 0x80) {
+                i++;
+                continue;
+            }
+            int length = BlockTokenizer.utf8Length(b0);
+            if (length == 0) return false;
+            for (int k = 1; k < length; k++) {
+                if (i + k == limit) return !wholeFile;
+                int b = bytes.get(i + k) & 0xFF;
+                if (b < BlockTokenizer.utf8Min(b0, k) || b > BlockTokenizer.utf8Max(b0, k)) return false;
+            }
+            // rules out surrogates, which are encoded as ED A0 80 to ED BF BF
+            if (b0 == 0xED && (bytes.get(i + 1) & 0xFF) >= 0xA0) return false;
+            i += length;
+        }
+        return true;
+    }
+
+    private static boolean startsWith(ByteBuffer bytes, byte[] prefix) {
+        if (bytes.remaining() < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes.get(bytes.position() + i) != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param charset charset the file is decoded with
+     * @param bomLength number of bytes of byte order mark at the start of the file
+     */
+    private TextEncoding(Charset charset, int bomLength) {
+        this.charset = charset;
+        this.bomLength = bomLength;
+    }
+
+    @Override
+    public String toString() {
+        return bomLength > 0 ? charset.name() + " with byte order mark" : charset.name();
+    }
+}
@@ -0,0 +1,14 @@
+/**
+ * Receives the words produced by a {@link Tokenizer} as it scans.
+ */
+public interface TokenHandler {
+
+    /**
+     * Called once for every completed word. The characters are only valid for the duration of the call, since the
+     * tokenizer reuses its buffer for the next word.
+     * @param buf buffer holding the lowercase word
+     * @param off index of the first character of the word
+     * @param len number of characters in the word
+     */
+    void word(char[] buf, int off, int len);
+}
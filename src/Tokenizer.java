@@ -0,0 +1,17 @@
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits text into lowercase words. A word is a run of alphabetic characters, and any other character ends it.
+ */
+public interface Tokenizer {
+
+    /**
+     * Reads from the given Reader until it is exhausted, passing every completed word to the handler. A word that is
+     * still being built when the input runs out is not passed on, since no character has ended it.
+     * @param in Reader to scan
+     * @param handler TokenHandler to pass words to
+     * @return the number of characters read
+     */
+    long tokenize(Reader in, TokenHandler handler) throws IOException;
+}
@@ -0,0 +1,335 @@
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Hash table for counting words, using open addressing with linear probing and primitive counts. Words can be counted
+ * straight from a tokenizer's buffer, and a String is only created for a word the first time it is seen. Counts are
+ * longs, so a word seen more than 2^31 times in a very large file or corpus doesn't wrap around.
+ * <p>
+ * Each slot's hash is kept alongside its key so that most mismatches are ruled out without comparing characters. The
+ * hashes are the same as {@link String#hashCode()}, so words can also be looked up by String.
+ */
+public class WordCountTable {
+
+    static final int DEFAULT_CAPACITY = 1 << 10; // must be a power of two
+
+    /**
+     * Ranks entries from the highest count to the lowest, breaking ties alphabetically.
+     */
+    public static final Comparator<Map.Entry<String, Long>> RANK_ORDER = (o1, o2) -> {
+        int byCount = Long.compare(o2.getValue(), o1.getValue());
+        return byCount != 0 ? byCount : o1.getKey().compareTo(o2.getKey());
+    };
+
+    private String[] keys; // the words, or null for an empty slot
+    private int[] hashes; // the hash of the word in each slot
+    private long[] counts; // the count of the word in each slot
+    private int size = 0; // number of words in the table
+    private int mask; // capacity - 1, for turning a hash into a slot index
+
+    public WordCountTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of slots to start with, which is rounded up to a power of two
+     */
+    public WordCountTable(int capacity) {
+        allocate(Math.max(2, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1));
+    }
+
+    /**
+     * Adds one to the count of a word, adding the word to the table if it isn't there already.
+     * @param buf buffer holding the word
+     * @param off index of the first character of the word
+     * @param len number of characters in the word
+     * @return the new count of the word
+     */
+    public long increment(char[] buf, int off, int len) {
+        int hash = 0;
+        for (int i = off, end = off + len; i < end; i++) hash = 31 * hash + buf[i];
+
+        String[] keys = this.keys;
+        int[] hashes = this.hashes;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            String key = keys[slot];
+            if (key == null) {
+                insert(slot, new String(buf, off, len), hash, 1);
+                return 1;
+            }
+            if (hashes[slot] == hash && matches(key, buf, off, len)) return ++counts[slot];
+        }
+    }
+
+    /**
+     * Adds one to the count of a word, but only if the word is already in the table.
+     * @param buf buffer holding the word
+     * @param off index of the first character of the word
+     * @param len number of characters in the word
+     * @return the new count of the word, or 0 if it isn't in the table
+     */
+    public long incrementExisting(char[] buf, int off, int len) {
+        int hash = 0;
+        for (int i = off, end = off + len; i < end; i++) hash = 31 * hash + buf[i];
+
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            String key = keys[slot];
+            if (key == null) return 0;
+            if (hashes[slot] == hash && matches(key, buf, off, len)) return ++counts[slot];
+        }
+    }
+
+    /**
+     * Adds to the count of a word, adding the word to the table if it isn't there already.
+     * @param word word to add to
+     * @param count amount to add to the word's count
+     * @return the new count of the word
+     */
+    public long add(String word, long count) {
+        int hash = word.hashCode();
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            String key = keys[slot];
+            if (key == null) {
+                insert(slot, word, hash, count);
+                return count;
+            }
+            if (hashes[slot] == hash && key.equals(word)) return counts[slot] += count;
+        }
+    }
+
+    /**
+     * Adds every count in another table to this one.
+     * @param other WordCountTable to add from
+     */
+    public void addAll(WordCountTable other) {
+        other.forEach(this::add);
+    }
+
+    /**
+     * @param word word to look up
+     * @return the count of the word, or 0 if it isn't in the table
+     */
+    public long get(String word) {
+        int hash = word.hashCode();
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            String key = keys[slot];
+            if (key == null) return 0;
+            if (hashes[slot] == hash && key.equals(word)) return counts[slot];
+        }
+    }
+
+    /**
+     * Removes every word whose count is at most the given floor, shrinking the table to fit the words that are left.
+     * @param floor highest count of the words to remove
+     */
+    public void retainAbove(long floor) {
+        String[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        long[] oldCounts = counts;
+        int kept = 0;
+        for (int i = 0; i < oldKeys.length; i++) if (oldKeys[i] != null && oldCounts[i] > floor) kept++;
+
+        allocate(Math.max(DEFAULT_CAPACITY, Integer.highestOneBit(Math.max(1, kept)) << 2));
+        size = kept;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == null || oldCounts[i] <= floor) continue;
+            int slot = spread(oldHashes[i]) & mask;
+            while (keys[slot] != null) slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            hashes[slot] = oldHashes[i];
+            counts[slot] = oldCounts[i];
+        }
+    }
+
+    /**
+     * Removes every word, keeping the slots, so that the table can be filled again without growing.
+     */
+    public void clear() {
+        Arrays.fill(keys, null);
+        size = 0;
+    }
+
+    /**
+     * @return the number of distinct words in the table
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Passes every word and its count to an action, in no particular order.
+     * @param action action to perform for each word
+     */
+    public void forEach(ObjLongConsumer<String> action) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != null) action.accept(keys[slot], counts[slot]);
+        }
+    }
+
+    /**
+     * Passes every word and its count to an action, in alphabetical order.
+     * @param action action to perform for each word
+     */
+    public void forEachSorted(ObjLongConsumer<String> action) {
+        String[] words = new String[size];
+        int n = 0;
+        for (String key : keys) if (key != null) words[n++] = key;
+        Arrays.sort(words);
+        for (String word : words) action.accept(word, get(word));
+    }
+
+    /**
+     * @return a new list holding an entry for every word in the table, in no particular order
+     */
+    public ArrayList<Map.Entry<String, Long>> entryList() {
+        ArrayList<Map.Entry<String, Long>> list = new ArrayList<>(size);
+        forEach((word, count) -> list.add(new AbstractMap.SimpleImmutableEntry<>(word, count)));
+        return list;
+    }
+
+    /**
+     * @return the highest count of any word, or 0 if the table is empty
+     */
+    public long maxCount() {
+        long max = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != null && counts[slot] > max) max = counts[slot];
+        }
+        return max;
+    }
+
+    /**
+     * Finds the k highest-ranked words without sorting the whole table. Keeps the best k seen so far in a min-heap of
+     * slot indices, so that each word costs at most one comparison against the weakest of them unless it displaces it.
+     * @param k number of words to find
+     * @return a new list of at most k entries, ordered by {@link #RANK_ORDER}
+     */
+    public ArrayList<Map.Entry<String, Long>> topK(int k) {
+        int[] heap = new int[Math.max(0, Math.min(k, size))];
+        int heapSize = 0;
+        for (int slot = 0; slot < keys.length && heap.length > 0; slot++) {
+            if (keys[slot] == null) continue;
+            if (heapSize < heap.length) {
+                heap[heapSize] = slot;
+                siftUp(heap, heapSize++);
+            } else if (ranksAbove(slot, heap[0])) {
+                heap[0] = slot;
+                siftDown(heap, 0, heapSize);
+            }
+        }
+
+        // removes the weakest word from the heap until it is empty, filling the result from the back
+        ArrayList<Map.Entry<String, Long>> list = new ArrayList<>(Collections.nCopies(heapSize, null));
+        for (int i = heapSize - 1; i >= 0; i--) {
+            int slot = heap[0];
+            list.set(i, new AbstractMap.SimpleImmutableEntry<>(keys[slot], counts[slot]));
+            heap[0] = heap[i];
+            siftDown(heap, 0, i);
+        }
+        return list;
+    }
+
+    /**
+     * @return a new list holding an entry for every word in the table, ordered by {@link #RANK_ORDER}
+     */
+    public ArrayList<Map.Entry<String, Long>> rankedList() {
+        ArrayList<Map.Entry<String, Long>> list = entryList();
+        list.sort(RANK_ORDER);
+        return list;
+    }
+
+    /**
+     * @return true if the word in slot a is ranked above the word in slot b
+     */
+    private boolean ranksAbove(int a, int b) {
+        return counts[a] != counts[b] ? counts[a] > counts[b] : keys[a].compareTo(keys[b]) < 0;
+    }
+
+    /**
+     * Moves a heap entry towards the root while it is ranked below its parent.
+     */
+    private void siftUp(int[] heap, int i) {
+        int slot = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!ranksAbove(heap[parent], slot)) break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = slot;
+    }
+
+    /**
+     * Moves a heap entry away from the root while either of its children is ranked below it.
+     */
+    private void siftDown(int[] heap, int i, int heapSize) {
+        int slot = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && ranksAbove(heap[child], heap[child + 1])) child++;
+            if (!ranksAbove(slot, heap[child])) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = slot;
+    }
+
+    /**
+     * Puts a new word into an empty slot, growing the table if it has become more than half full.
+     */
+    private void insert(int slot, String word, int hash, long count) {
+        keys[slot] = word;
+        hashes[slot] = hash;
+        counts[slot] = count;
+        if (++size > keys.length >>> 1) rehash();
+    }
+
+    /**
+     * Doubles the number of slots and moves every word into its slot in the new arrays.
+     */
+    private void rehash() {
+        String[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        long[] oldCounts = counts;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == null) continue;
+            int slot = spread(oldHashes[i]) & mask;
+            while (keys[slot] != null) slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            hashes[slot] = oldHashes[i];
+            counts[slot] = oldCounts[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new String[capacity];
+        hashes = new int[capacity];
+        counts = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Mixes the high bits of a hash into the low ones, since only the low bits pick the slot.
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @return true if the String holds exactly the given characters
+     */
+    static boolean matches(String key, char[] buf, int off, int len) {
+        if (key.length() != len) return false;
+        for (int i = 0; i < len; i++) {
+            if (key.charAt(i) != buf[off + i]) return false;
+        }
+        return true;
+    }
+}
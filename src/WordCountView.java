@@ -0,0 +1,201 @@
+import javax.swing.*;
+import javax.swing.border.TitledBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.TableRowSorter;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Contains static methods used in {@link MainView} to display the results of a {@link WordCounter} scan.
+ */
+public final class WordCountView {
+
+    /**
+     * Creates a JPanel displaying the top 10 most frequent keywords along with their counts, to make up part of the
+     * larger scan results panel.
+     * @param wordCounter WordCounter holding the results of a scan
+     * @return Jpanel, or null if the scan found no keywords
+     */
+    public static JPanel createTop10View(WordCounter wordCounter) {
+        ArrayList<Map.Entry<String, Long>> top10 = wordCounter.getTopKeywords(10);
+        if (top10.isEmpty()) return null;
+
+        JTextArea textArea = createTop10Area();
+        textArea.setText(formatTop10(top10, wordCounter.tally.maxWordLen, wordCounter.maxWordCountDigits));
+        return createTop10Panel(textArea);
+    }
+
+    /**
+     * Creates the text area that the top 10 keywords are written in.
+     * @return JTextArea
+     */
+    static JTextArea createTop10Area() {
+        JTextArea textArea = new JTextArea();
+        textArea.setFont(GUI_Util.SMALL_PLAIN);
+        textArea.setForeground(Color.WHITE);
+        textArea.setOpaque(false);
+        return textArea;
+    }
+
+    /**
+     * Creates the bordered JPanel that holds the text area of the top 10 keywords.
+     * @param textArea text area created by {@link #createTop10Area()}
+     * @return JPanel
+     */
+    static JPanel createTop10Panel(JTextArea textArea) {
+        JPanel pnl = new JPanel();
+        pnl.setOpaque(false);
+        TitledBorder top10Border = BorderFactory.createTitledBorder(BorderFactory.createCompoundBorder
+                        (BorderFactory.createEmptyBorder(10, 10, 10, 10),
+                                BorderFactory.createLineBorder(Color.LIGHT_GRAY, 2, true)),
+                "Top 10", TitledBorder.CENTER, TitledBorder.TOP);
+        top10Border.setTitleFont(GUI_Util.MED_BOLD);
+        top10Border.setTitleColor(Color.WHITE);
+        pnl.setBorder(top10Border);
+
+        pnl.add(textArea);
+        return pnl;
+    }
+
+    /**
+     * Shows the top keywords of a scan that is still running. The columns are only as wide as these keywords need,
+     * since the longest keyword and highest count of the whole file aren't known yet.
+     * @param textArea text area created by {@link #createTop10Area()}
+     * @param top10 keywords and their counts, from the highest count to the lowest
+     */
+    static void showTop10(JTextArea textArea, List<Map.Entry<String, Long>> top10) {
+        if (top10.isEmpty()) {
+            textArea.setText("");
+            return;
+        }
+
+        int wordWidth = 0;
+        for (Map.Entry<String, Long> wordCountPair : top10) {
+            wordWidth = Math.max(wordWidth, wordCountPair.getKey().length());
+        }
+        String text = formatTop10(top10, wordWidth, KeywordExporter.digits(top10.get(0).getValue()));
+        if (!text.equals(textArea.getText())) textArea.setText(text);
+    }
+
+    /**
+     * Lines the keywords up on the right, with their counts in a column after them.
+     * @param top10 keywords and their counts, from the highest count to the lowest
+     * @param wordWidth width of the keyword column
+     * @param countWidth width of the count column
+     * @return the keywords and counts, one pair per line
+     */
+    private static String formatTop10(List<Map.Entry<String, Long>> top10, int wordWidth, int countWidth) {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Long> wordCountPair : top10) {
+            text.append(String.format("%" + wordWidth + "s   %" + countWidth + "d%n", wordCountPair.getKey(),
+                    wordCountPair.getValue()));
+        }
+        text.deleteCharAt(text.length() - 1);
+        return text.toString();
+    }
+
+    /**
+     * Creates a JPanel displaying every keyword and their respective counts, to make up part of the larger scan results
+     * panel. The keywords are shown in a JTable, so only the rows on screen are ever drawn. Clicking a column header
+     * sorts by that column, and typing in the filter box hides every keyword that doesn't contain the text.
+     * @param wordCounter WordCounter holding the results of a scan
+     * @return JPanel, or null if the scan found no keywords
+     */
+    public static JPanel createFullListView(WordCounter wordCounter) {
+        if (wordCounter.tally.wordMap.size() == 0) return null;
+
+        KeywordTableModel model = new KeywordTableModel(wordCounter.getWordList());
+        JTable table = new JTable(model);
+        table.setFont(GUI_Util.SMALL_PLAIN);
+        table.setRowHeight(table.getFontMetrics(GUI_Util.SMALL_PLAIN).getHeight() + 4);
+        table.setForeground(Color.WHITE);
+        table.setBackground(Color.DARK_GRAY);
+        table.setFillsViewportHeight(true);
+        table.setShowGrid(false);
+        table.getTableHeader().setFont(GUI_Util.SMALL_BOLD);
+        table.getTableHeader().setReorderingAllowed(false);
+
+        // the model is already in ranked order, so the sorter only does any work once a header is clicked
+        TableRowSorter<KeywordTableModel> sorter = new TableRowSorter<>(model);
+        sorter.setComparator(KeywordTableModel.WORD_COLUMN, Comparator.naturalOrder());
+        sorter.setSortsOnUpdates(false);
+        table.setRowSorter(sorter);
+
+        JTextField filterField = new JTextField();
+        filterField.setFont(GUI_Util.SMALL_PLAIN);
+        filterField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                filter(sorter, filterField.getText());
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                filter(sorter, filterField.getText());
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                filter(sorter, filterField.getText());
+            }
+        });
+        Box filterBox = Box.createHorizontalBox();
+        filterBox.add(GUI_Util.createLabel("Filter: ", GUI_Util.SMALL_BOLD));
+        filterBox.add(filterField);
+        filterBox.setBorder(BorderFactory.createEmptyBorder(0, 0, 10, 0));
+
+        TitledBorder fullListBorder = BorderFactory.createTitledBorder(BorderFactory.createCompoundBorder
+                        (BorderFactory.createEmptyBorder(10, 10, 10, 10),
+                                BorderFactory.createLineBorder(Color.LIGHT_GRAY, 2, true)),
+                "All Keywords", TitledBorder.CENTER, TitledBorder.TOP);
+        fullListBorder.setTitleFont(GUI_Util.MED_BOLD);
+        fullListBorder.setTitleColor(Color.WHITE);
+
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED);
+        scrollPane.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
+        scrollPane.getVerticalScrollBar().setUnitIncrement(16);
+        scrollPane.setOpaque(false);
+        scrollPane.getViewport().setBackground(Color.DARK_GRAY);
+
+        JPanel pnl = new JPanel(new BorderLayout());
+        pnl.setOpaque(false);
+        pnl.setBorder(BorderFactory.createCompoundBorder(fullListBorder,
+                BorderFactory.createEmptyBorder(5, 5, 5, 5)));
+        pnl.add(filterBox, BorderLayout.NORTH);
+        pnl.add(scrollPane, BorderLayout.CENTER);
+        return pnl;
+    }
+
+    /**
+     * Hides every row of the full keyword list whose keyword doesn't contain the given text.
+     * @param sorter row sorter of the full keyword list
+     * @param text text to look for, or an empty String to show every row
+     */
+    private static void filter(TableRowSorter<KeywordTableModel> sorter, String text) {
+        if (text.isEmpty()) {
+            sorter.setRowFilter(null);
+            return;
+        }
+
+        // folds the text the same way the scan folded the keywords, which the GUI always does with the default folding
+        String folded = new ScanOptions().caseFolding.fold(text);
+        sorter.setRowFilter(new RowFilter<>() {
+            @Override
+            public boolean include(Entry<? extends KeywordTableModel, ? extends Integer> entry) {
+                return entry.getModel().getWord(entry.getIdentifier()).contains(folded);
+            }
+        });
+    }
+
+    /**
+     * Private constructor
+     */
+    private WordCountView() {
+
+    }
+}
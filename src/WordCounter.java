@@ -1,27 +1,50 @@
-import javax.swing.*;
-import javax.swing.border.TitledBorder;
-import java.awt.*;
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
- * Scans the target file identified by {@link MainView} and counts keywords.
+ * Scans the target file identified by {@link MainView} and counts keywords. Has no dependency on Swing, so that it can
+ * also be used without a display by {@link BatchMain}. The results are shown in the GUI by {@link WordCountView}.
  */
-public class WordCounter extends BufferedReader {
+public class WordCounter {
 
-    // for holding keywords and their counts as the scan is taking place
-    final HashMap<String, Integer> wordMap = new HashMap<>();
+    /**
+     * The engines available for scanning the target file.
+     */
+    public enum ScanMode {
+        CHARACTER, // the original engine, reading one character at a time
+        BLOCK, // reads large blocks of characters, with a fast path for ASCII
+        MAPPED, // memory-maps the file and tokenizes straight from the mapped bytes
+        PARALLEL, // memory-maps the file and scans chunks of it on several threads at once
+        PIPELINED; // reads, tokenizes and counts on separate threads, overlapping reads with the rest of the scan
+
+        /**
+         * @param options settings for the scan, whose folding and normalization are ignored by {@link #CHARACTER}
+         * @return a new Tokenizer for this scan mode, for the modes that read through a {@link Reader}
+         */
+        Tokenizer createTokenizer(ScanOptions options) {
+            return this == CHARACTER ? new CharTokenizer()
+                    : new BlockTokenizer(options.caseFolding, options.normalization);
+        }
+    }
+
+    static final ScanMode DEFAULT_SCAN_MODE = ScanMode.BLOCK;
+    // number of characters of copyright info at the start of Dracula, after its byte order mark
+    static final int DRACULA_HEADER_LENGTH = 2460;
+    public static final File DRACULA = new File(System.getProperty("user.dir") + "//sample//dracula.txt");
+
+    // holds the keywords, their counts and the totals collected during the scan
+    final WordTally tally;
 
-    // holds the keywords and their counts post-scan, for the purpose of sorting
-    ArrayList<Map.Entry<String, Integer>> wordList;
+    // holds every keyword and its count in ranked order, once it has been asked for by getWordList()
+    ArrayList<Map.Entry<String, Long>> wordList;
 
     static WordCounter wordCounter; // stores the total number of words
-    int maxWordLen = -1, // stores the length of the longest word
-            maxWordCountDigits; // stores the number of digits of the largest word-count
-    int characterCount = 0; // stores the total number of characters in the file scanned
-    int totalWords = 0; // stores the total number of words in this file, including both keywords and stop words
-    int totalKeywords = 0; // stores the total number of keywords identified
-    int totalStopWords = 0; // stores the total number of stop words encountered
+    int maxWordCountDigits; // stores the number of digits of the largest word-count
 
     /**
      * Creates a new instance of WordCounter.
@@ -30,75 +53,106 @@ public class WordCounter extends BufferedReader {
      * @return an instance of WordCounter
      */
     public static WordCounter createWordCounter(File target, StopFilter stopFilter) throws FileNotFoundException {
-        wordCounter = new WordCounter(target, stopFilter);
-        return wordCounter;
+        return createWordCounter(target, stopFilter, DEFAULT_SCAN_MODE);
     }
 
     /**
-     * Creates a JPanel displaying the top 10 most frequent keywords along with their counts, to make up part of the
-     * larger scan results panel.
-     * @return Jpanel
+     * Creates a new instance of WordCounter that scans using the given engine.
+     * @param target file for this to scan
+     * @param stopFilter StopFilter instance to use for filtering out stop words
+     * @param scanMode engine to scan the file with
+     * @return an instance of WordCounter
      */
-    public JPanel createTop10View() {
-        if (wordList == null) return null;
-
-        StringBuilder text = new StringBuilder();
-        for (int i = 0; i < wordList.size() && i < 10; i++) {
-            text.append(String.format("%" + maxWordLen + "s   %" + maxWordCountDigits + "d%n",
-                    wordList.get(i).getKey(), wordList.get(i).getValue()));
-        }
-        text.deleteCharAt(text.length() - 1);
-
-        JTextArea textArea = new JTextArea(text.toString());
-        textArea.setFont(GUI_Util.SMALL_PLAIN);
-        textArea.setForeground(Color.WHITE);
-        textArea.setOpaque(false);
-
-        JPanel pnl = new JPanel();
-        pnl.setOpaque(false);
-        TitledBorder top10Border = BorderFactory.createTitledBorder(BorderFactory.createCompoundBorder
-                        (BorderFactory.createEmptyBorder(10, 10, 10, 10),
-                                BorderFactory.createLineBorder(Color.LIGHT_GRAY, 2, true)),
-                "Top 10", TitledBorder.CENTER, TitledBorder.TOP);
-        top10Border.setTitleFont(GUI_Util.MED_BOLD);
-        top10Border.setTitleColor(Color.WHITE);
-        pnl.setBorder(top10Border);
-
-        pnl.add(textArea);
-        return pnl;
+    public static WordCounter createWordCounter(File target, StopFilter stopFilter, ScanMode scanMode)
+            throws FileNotFoundException {
+        return createWordCounter(target, stopFilter, new ScanOptions().scanMode(scanMode), new ScanProgress());
     }
 
     /**
-     * Creates a JPanel displaying every keyword and their respective counts, to make up part of the larger scan results
-     * panel.
-     * @return JPanel
+     * Creates a new instance of WordCounter that scans with the given options, reporting its progress as it goes. The
+     * scan can be stopped by calling {@link ScanProgress#cancel()} from another thread.
+     * @param target file for this to scan
+     * @param stopFilter StopFilter instance to use for filtering out stop words
+     * @param options settings for the scan
+     * @param progress ScanProgress to report to
+     * @return an instance of WordCounter
+     * @throws java.util.concurrent.CancellationException if the scan was canceled
      */
-    public JScrollPane createFullListView() {
-        if (wordList == null) return null;
+    public static WordCounter createWordCounter(File target, StopFilter stopFilter, ScanOptions options,
+                                                ScanProgress progress) throws FileNotFoundException {
+        progress.start(target.length());
+        wordCounter = scanOrLoad(target, stopFilter, options, progress);
+        return wordCounter;
+    }
 
-        StringBuilder text = getKeywordsAsText();
+    /**
+     * Creates a new instance of WordCounter for a file, without replacing the last result held by
+     * {@link #wordCounter}. Used when many files are scanned at once, as by {@link CorpusScanner}.
+     * @param target file for this to scan
+     * @param stopFilter StopFilter instance to use for filtering out stop words
+     * @param options settings for the scan
+     * @param progress ScanProgress to report to
+     * @return an instance of WordCounter
+     */
+    static WordCounter scan(File target, StopFilter stopFilter, ScanOptions options, ScanProgress progress)
+            throws FileNotFoundException {
+        return scanOrLoad(target, stopFilter, options, progress);
+    }
 
-        JTextArea textArea = new JTextArea(text.toString());
-        textArea.setFont(GUI_Util.SMALL_PLAIN);
-        textArea.setForeground(Color.WHITE);
-        textArea.setOpaque(false);
+    /**
+     * Scans a file, unless its results are found in the result cache of the options.
+     * @param target file to scan
+     * @param stopFilter StopFilter instance to use for filtering out stop words
+     * @param options settings for the scan
+     * @param progress ScanProgress to report to
+     * @return an instance of WordCounter
+     */
+    private static WordCounter scanOrLoad(File target, StopFilter stopFilter, ScanOptions options,
+                                          ScanProgress progress) throws FileNotFoundException {
+        TextEncoding encoding;
+        String key = null;
+        // cached results only hold the counts of single keywords
+        ResultCache cache = options.phraseLength == 0 ? options.resultCache : null;
+        try {
+            encoding = TextEncoding.detect(target, options.charset);
+            if (cache != null) {
+                key = cache.key(target, stopFilter, encoding.charset, headerLength(target), options.tokenization());
+            }
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(target.toString());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (cache == null) return new WordCounter(target, encoding, stopFilter, options, progress);
 
-        TitledBorder fullListBorder = BorderFactory.createTitledBorder(BorderFactory.createCompoundBorder
-                        (BorderFactory.createEmptyBorder(10, 10, 10, 10),
-                                BorderFactory.createLineBorder(Color.LIGHT_GRAY, 2, true)),
-                "All Keywords", TitledBorder.CENTER, TitledBorder.TOP);
-        fullListBorder.setTitleFont(GUI_Util.MED_BOLD);
-        fullListBorder.setTitleColor(Color.WHITE);
+        WordTally cached = cache.get(key);
+        if (cached != null) {
+            progress.addBytes(target.length());
+            progress.addCharacters(cached.characterCount);
+            return new WordCounter(cached);
+        }
+        WordCounter scanned = new WordCounter(target, encoding, stopFilter, options, progress);
+        cache.put(key, scanned);
+        return scanned;
+    }
 
-        JScrollPane scrollPane = new JScrollPane(textArea);
-        scrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED);
-        scrollPane.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
-        scrollPane.getVerticalScrollBar().setUnitIncrement(16);
-        scrollPane.setOpaque(false);
-        scrollPane.getViewport().setOpaque(false);
-        scrollPane.setBorder(fullListBorder);
+    /**
+     * @param target file to scan
+     * @return the number of characters to skip at the start of the file, which is only more than 0 for Dracula
+     */
+    static long headerLength(File target) {
+        // if the target file happens to be Dracula, skips over the beginning part that contains copyright info
+        return Objects.equals(target, DRACULA) ? DRACULA_HEADER_LENGTH : 0;
+    }
 
-        return scrollPane;
+    /**
+     * Creates a new instance of WordCounter holding counts that have already been collected, for example the merged
+     * counts of every file in a corpus.
+     * @param tally counts to hold
+     * @return an instance of WordCounter
+     */
+    static WordCounter fromTally(WordTally tally) {
+        return new WordCounter(tally);
     }
 
     /**
@@ -106,125 +160,267 @@ public class WordCounter extends BufferedReader {
      * @param writer BufferedWriter object
      */
     public void writeFile(BufferedWriter writer) {
+        export(writer, KeywordExporter.Format.TEXT);
+    }
+
+    /**
+     * Writes every keyword and its count in ranked order, streaming them to the Writer rather than building the whole
+     * output in memory first. Doesn't close the Writer.
+     * @param writer Writer to write to
+     * @param format format to write in
+     */
+    public void export(Writer writer, KeywordExporter.Format format) {
         try {
-            writer.write(getKeywordsAsText().toString());
+            KeywordExporter.export(this, writer, format);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public int getTotalChars() {
-        return characterCount;
+    /**
+     * Writes the results of the last scan to a binary snapshot file, which can be loaded again with
+     * {@link #loadSnapshot(File)}.
+     * @param file file to write to
+     * @see ResultSnapshot
+     */
+    public void writeSnapshot(File file) throws IOException {
+        ResultSnapshot.write(this, file);
     }
 
-    public int getTotalWords() {
-        return totalWords;
+    /**
+     * Creates a new instance of WordCounter holding the results saved in a snapshot file, without scanning anything.
+     * @param file snapshot file written by {@link #writeSnapshot(File)}
+     * @return an instance of WordCounter
+     * @throws IOException if the file can't be read or isn't a snapshot
+     */
+    public static WordCounter loadSnapshot(File file) throws IOException {
+        return new WordCounter(ResultSnapshot.read(file));
     }
 
-    public int getTotalKeywords() {
-        return totalKeywords;
+    /**
+     * Finds the most frequent keywords without sorting every keyword.
+     * @param k number of keywords to find
+     * @return a list of at most k keywords and their counts, from the highest count to the lowest
+     */
+    public ArrayList<Map.Entry<String, Long>> getTopKeywords(int k) {
+        if (wordList != null) return new ArrayList<>(wordList.subList(0, Math.min(k, wordList.size())));
+        return tally.wordMap.topK(k);
     }
 
-    public int getTotalStopWords() {
-        return totalStopWords;
+    /**
+     * Gets every keyword in ranked order. The keywords are only sorted the first time this is called.
+     * @return a list of every keyword and its count, from the highest count to the lowest
+     */
+    public ArrayList<Map.Entry<String, Long>> getWordList() {
+        if (wordList == null) wordList = tally.wordMap.rankedList();
+        return wordList;
     }
 
     /**
-     * Creates an instance of WordCounter that immediately scans the file passed as an argument.
-     * @param target file to scan for tags
-     * @param stopFilter StopFilter object for filtering out stop words
+     * Finds the most frequent phrases without sorting every phrase.
+     * @param k number of phrases to find
+     * @return a list of at most k phrases and their counts, from the highest count to the lowest, which is empty if
+     * phrases weren't counted
+     * @see ScanOptions#phrases(int)
      */
-    private WordCounter(File target, StopFilter stopFilter) throws FileNotFoundException {
-        super(new InputStreamReader(new BufferedInputStream(new FileInputStream(target))));
+    public ArrayList<Map.Entry<String, Long>> getTopPhrases(int k) {
+        return tally.phrases == null ? new ArrayList<>() : tally.phrases.table.topK(k);
+    }
 
-        try {
-            // if the target file happens to be Dracula, skips over the beginning part that contains copyright info
-            if (Objects.equals(target, MainView.DRACULA) && ready()) {
-                //noinspection ResultOfMethodCallIgnored
-                skip(2461);
-            }
+    /**
+     * Gets every phrase in ranked order.
+     * @return a list of every phrase and its count, from the highest count to the lowest, which is empty if phrases
+     * weren't counted
+     * @see ScanOptions#phrases(int)
+     */
+    public ArrayList<Map.Entry<String, Long>> getPhraseList() {
+        return tally.phrases == null ? new ArrayList<>() : tally.phrases.table.rankedList();
+    }
 
-            StringBuilder word = new StringBuilder();
-            while (ready()) {
-                characterCount++; // increments character count
-                char c = (char) read(); // reads character
+    public long getTotalChars() {
+        return tally.characterCount;
+    }
 
-                // if the character is a letter, converts it to lowercase and adds it to the current word
-                if (Character.isAlphabetic(c))
-                    word.append(Character.toLowerCase(c));
+    public long getTotalWords() {
+        return tally.totalWords;
+    }
 
-                // if the character is not a letter, the current word must be over
-                else if (!word.isEmpty()) {
-                    totalWords++; // increments the total words counter
+    public long getTotalKeywords() {
+        return tally.totalKeywords;
+    }
 
-                    /*
-                    Checks if the word is longer than one character, because there should be no keywords that are
-                    only one character long. If the character is more than one character long, checks if it qualifies
-                    as a stop word.
-                     */
-                    if (word.length() > 1 && stopFilter.isKeyWord(word)) {
-                        totalKeywords++; // increments total keywords count
-                        addToWordCount(word); // adds the word to the hashmap
-                    } else totalStopWords++; // if the word is a stopword, increments the stop word count
+    public long getTotalStopWords() {
+        return tally.totalStopWords;
+    }
 
-                    // clears the current word
-                    word.delete(0, word.length());
+    /**
+     * Creates an instance of WordCounter that immediately scans the file passed as an argument.
+     * @param target file to scan for tags
+     * @param encoding how the file is decoded
+     * @param stopFilter StopFilter object for filtering out stop words
+     * @param options settings for the scan
+     * @param progress ScanProgress to report to
+     */
+    private WordCounter(File target, TextEncoding encoding, StopFilter stopFilter, ScanOptions options,
+                        ScanProgress progress)
+            throws FileNotFoundException {
+        ScanMode scanMode = options.scanMode;
+        // the stop words are read the same way as the words in the file, so that they match
+        tally = new WordTally(options.originalTokenizer() ? stopFilter
+                : stopFilter.readAs(options.caseFolding, options.normalization), progress, options.phraseLength,
+                options.maxPhrases, options.stemCache);
+
+        long skip = headerLength(target);
+
+        // checkpoints record byte offsets, which only the memory-mapped engines keep track of
+        if (scanMode == ScanMode.MAPPED || scanMode == ScanMode.PARALLEL || options.checkpointDirectory != null)
+            scanMapped(target, encoding, skip, options, progress);
+        else if (scanMode == ScanMode.PIPELINED) scanPipelined(target, encoding, skip, options, progress);
+        else {
+            InputStream in = new ProgressInputStream(new BufferedInputStream(new FileInputStream(target)), progress);
+            try (Reader reader = new InputStreamReader(in, encoding.charset)) {
+                in.skipNBytes(encoding.bomLength);
+                if (skip > 0 && reader.ready()) {
+                    //noinspection ResultOfMethodCallIgnored
+                    reader.skip(skip);
                 }
+
+                tally.characterCount = scanMode.createTokenizer(options)
+                        .tokenize(new ProgressReader(reader, progress), tally);
+            } catch (FileNotFoundException e) {
+                throw e;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
             }
-            close();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
         }
 
-        // creates an ArrayList of Map entries to effectively sort the map
-        wordList = new ArrayList<>(wordMap.entrySet());
+        countDigits();
+    }
 
-        /*
-        Sorts them using an anonymous comparator that checks each keyword's count. This comparator technically
-        sorts in "reverse" order, so that the list goes from largest to smallest.
-         */
-        wordList.sort((o1, o2) -> {
-            if (o1.getValue().compareTo(o2.getValue()) > 0) return o2.getValue() - o1.getValue();
-            return o2.getValue().compareTo(o1.getValue());
-        });
-
-        /*
-        Takes the value (count) of the first item in the list and determines the number of digits it contains. Does
-        this by dividing it by 10, then 100, then 1000, and so on and so forth until the result is zero.
-         */
-        int highestCount = wordList.get(0).getValue();
+    /**
+     * Creates an instance of WordCounter holding counts that have already been collected.
+     * @param tally counts to hold
+     */
+    private WordCounter(WordTally tally) {
+        this.tally = tally;
+        countDigits();
+    }
+
+    /**
+     * Takes the highest count of any keyword and determines the number of digits it contains. Does this by dividing
+     * it by 10 until the result is zero, which leaves no digits for an empty table.
+     */
+    private void countDigits() {
         int i = 0;
-        while (highestCount > 0) highestCount = wordList.get(0).getValue() / (int) Math.pow(10, ++i);
+        for (long highestCount = tally.wordMap.maxCount(); highestCount > 0; highestCount /= 10) i++;
         maxWordCountDigits = i;
     }
 
     /**
-     * Adds a keyword to {@link #wordMap}.
-     * @param word word String to add to map
+     * Scans the target file with a {@link PipelinedScanner}, which reads it on a thread of its own.
+     * @param target file to scan for tags
+     * @param encoding how the file is decoded
+     * @param skip number of characters to skip at the start of the file
+     * @param options settings for the scan
+     * @param progress ScanProgress to report to
      */
-    private void addToWordCount(StringBuilder word) {
-        String s = word.toString();
-        if (wordMap.containsKey(s)) {
-            wordMap.put(s, wordMap.get(s) + 1);
-        }
-        else {
-            wordMap.put(s, 1);
+    private void scanPipelined(File target, TextEncoding encoding, long skip, ScanOptions options,
+                               ScanProgress progress)
+            throws FileNotFoundException {
+        try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.READ)) {
+            long start = new MappedScanner(encoding.charset).skip(channel, encoding.bomLength, skip);
+            progress.addBytes(start);
+            PipelinedScanner pipeline = new PipelinedScanner(channel, encoding.charset, tally.stopFilter,
+                    options.caseFolding, options.normalization, options.phraseLength, options.maxPhrases,
+                    options.stemCache, options.threads, progress);
+            tally.merge(pipeline.scan(start, channel.size()));
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(target.toString());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
-        if (word.length() > maxWordLen) maxWordLen = word.length();
     }
 
     /**
-     * Iterates through {@link #wordList}, formatting the contents into a StringBuilder object. Used for creating
-     * a text file whenever the user wants to save.
-     * @return StringBuilder containing every keyword and their counts.
+     * Scans the target file by memory-mapping it, using either {@link MappedScanner} on this thread or
+     * {@link ParallelScanner} on several. If checkpoints are turned on and the file was scanned before, only the part
+     * appended since the last scan is scanned, and a new checkpoint is saved at the end.
+     * @param target file to scan for tags
+     * @param encoding how the file is decoded
+     * @param skip number of characters to skip at the start of the file
+     * @param options settings for the scan
+     * @param progress ScanProgress to report to
      */
-    private StringBuilder getKeywordsAsText() {
-        StringBuilder text = new StringBuilder();
-        for (Map.Entry<String, Integer> wordCountPair : wordList) {
-            text.append(String.format("%" + maxWordLen + "s   %" + maxWordCountDigits + "d%n",
-                    wordCountPair.getKey(), wordCountPair.getValue()));
+    private void scanMapped(File target, TextEncoding encoding, long skip, ScanOptions options,
+                            ScanProgress progress)
+            throws FileNotFoundException {
+        try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.READ)) {
+            Charset charset = encoding.charset;
+            boolean asciiCompatible = MappedScanner.isAsciiCompatible(charset);
+            MappedScanner scanner = new MappedScanner(charset, progress, options.caseFolding, options.normalization);
+            long end = channel.size();
+
+            /*
+            Only files in ASCII-compatible charsets can be picked up partway, since their decoders keep no state, and
+            only when phrases aren't counted, since checkpoints don't hold them.
+             */
+            File checkpoint = options.checkpointDirectory != null && asciiCompatible && options.phraseLength == 0
+                    ? ScanCheckpoint.fileFor(options.checkpointDirectory, target) : null;
+            ScanCheckpoint.Fingerprint fingerprint = null;
+            long resumed = -1;
+            if (checkpoint != null) {
+                // the scanner hashes the bytes it scans, so that the next checkpoint can be saved without reading them
+                scanner.fingerprint = fingerprint = new ScanCheckpoint.Fingerprint(target, channel);
+                resumed = ScanCheckpoint.load(checkpoint, target, channel, charset, skip, options.tokenization(),
+                        tally, scanner, fingerprint);
+            }
+            long start;
+            if (resumed != -1) {
+                start = resumed;
+                progress.addBytes(resumed);
+                progress.addCharacters(tally.characterCount);
+            } else start = scanner.skip(channel, encoding.bomLength, skip);
+
+            if (options.scanMode == ScanMode.PARALLEL && asciiCompatible) {
+                // uses the common pool unless a different pool or number of threads was asked for
+                ForkJoinPool commonPool = ForkJoinPool.commonPool();
+                boolean ownPool = options.pool == null && options.threads != commonPool.getParallelism();
+                ForkJoinPool pool = options.pool != null ? options.pool
+                        : ownPool ? new ForkJoinPool(options.threads) : commonPool;
+                try {
+                    ParallelScanner parallel = new ParallelScanner(channel, charset, tally.stopFilter,
+                            options.caseFolding, options.normalization, options.phraseLength, options.maxPhrases,
+                            options.stemCache, options.sharedCounts, pool, progress);
+
+                    /*
+                    Scans the first and last words on this thread, so that the word left unfinished by a checkpoint is
+                    carried on, and the word left unfinished at the end of the file is kept for the next checkpoint.
+                     */
+                    long from = parallel.nextBoundary(start, end);
+                    long to = parallel.nextBoundary(Math.max(from, end - MappedScanner.SLICE_SIZE), end);
+                    tally.characterCount += scanner.scan(channel, start, from, tally, false);
+                    if (to < end) {
+                        tally.join(parallel.scan(from, to));
+                        start = to;
+                    } else start = from;
+                } finally {
+                    if (ownPool) pool.shutdown();
+                }
+            }
+            // scans the rest on this thread, which is the whole file for charsets that can't be split into chunks
+            tally.characterCount += scanner.scan(channel, start, end, tally, false);
+
+            if (checkpoint != null && scanner.position != resumed) {
+                ScanCheckpoint.save(checkpoint, target, fingerprint, charset, skip, options.tokenization(),
+                        scanner.position, scanner.pendingWord(), tally);
+            }
+
+            // decodes a partial character left at the very end of the file, which the next scan may find completed
+            if (scanner.position < end) tally.characterCount += scanner.scan(channel, scanner.position, end, tally);
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(target.toString());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
-        text.deleteCharAt(text.length() - 1); // deletes the last character, '\n'
-        return text;
     }
 }
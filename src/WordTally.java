@@ -0,0 +1,188 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts the words passed from a {@link Tokenizer}, sorting them into keywords and stop words. Separate tallies can
+ * be filled independently, for example by different threads scanning different parts of a file, and then merged.
+ */
+public class WordTally implements TokenHandler {
+
+    static final int WORD_REPORT_INTERVAL = 1 << 16; // number of words counted between progress reports
+
+    // for holding keywords and their counts as the scan is taking place
+    final WordCountTable wordMap = new WordCountTable();
+
+    int maxWordLen = -1; // stores the length of the longest word
+    long characterCount = 0; // stores the total number of characters scanned
+    long totalWords = 0; // stores the total number of words, including both keywords and stop words
+    long totalKeywords = 0; // stores the total number of keywords identified
+    long totalStopWords = 0; // stores the total number of stop words encountered
+    final StopFilter stopFilter; // used for filtering out stop words
+    final PhraseTally phrases; // counts phrases of several keywords in a row, or null if only keywords are counted
+    private final StemCache stems; // stems keywords before they are counted, or null to count them as written
+    private final ScanProgress progress; // for reporting the number of words counted
+    private long nextPublish = System.nanoTime(); // when to next publish live results, if they have been asked for
+    // the keywords to publish as the top ones, or null if live results weren't asked for before the tally was created
+    LiveResults.Candidates candidates;
+    // stands for the tally among the published results, so that they don't keep the tally and its table reachable
+    final Object publication = new Object();
+    // publications of the tallies merged into this one since it last published, which its next one replaces
+    final List<Object> merged = new ArrayList<>();
+
+    /**
+     * @param stopFilter StopFilter instance to use for filtering out stop words
+     */
+    public WordTally(StopFilter stopFilter) {
+        this(stopFilter, new ScanProgress());
+    }
+
+    /**
+     * @param stopFilter StopFilter instance to use for filtering out stop words
+     * @param progress ScanProgress to report the number of words counted to
+     */
+    public WordTally(StopFilter stopFilter, ScanProgress progress) {
+        this(stopFilter, progress, 0, 0);
+    }
+
+    /**
+     * @param stopFilter StopFilter instance to use for filtering out stop words
+     * @param progress ScanProgress to report the number of words counted to
+     * @param phraseLength longest phrase to count, in keywords, or 0 to only count single keywords
+     * @param maxPhrases number of phrases to keep before the least frequent are pruned
+     * @see PhraseTally
+     */
+    public WordTally(StopFilter stopFilter, ScanProgress progress, int phraseLength, int maxPhrases) {
+        this(stopFilter, progress, phraseLength, maxPhrases, null);
+    }
+
+    /**
+     * @param stopFilter StopFilter instance to use for filtering out stop words
+     * @param progress ScanProgress to report the number of words counted to
+     * @param phraseLength longest phrase to count, in keywords, or 0 to only count single keywords
+     * @param maxPhrases number of phrases to keep before the least frequent are pruned
+     * @param stems StemCache to reduce keywords to their stems with before they are counted, or null to count them as
+     *              they are written
+     */
+    public WordTally(StopFilter stopFilter, ScanProgress progress, int phraseLength, int maxPhrases,
+                     StemCache stems) {
+        this.stopFilter = stopFilter;
+        this.progress = progress;
+        phrases = phraseLength > 0 ? new PhraseTally(phraseLength, maxPhrases) : null;
+        this.stems = stems;
+        candidates = progress.getLiveResultsInterval() > 0 ? new LiveResults.Candidates() : null;
+    }
+
+    /**
+     * Counts a single word passed from the tokenizer, sorting it into either a keyword or a stop word.
+     * @param buf buffer holding the word
+     * @param off index of the first character of the word
+     * @param len number of characters in the word
+     */
+    @Override
+    public void word(char[] buf, int off, int len) {
+        // increments the total words counter, and reports progress every so often
+        if ((++totalWords & (WORD_REPORT_INTERVAL - 1)) == 0) reportProgress();
+
+        /*
+        Checks if the word is longer than one character, because there should be no keywords that are only one
+        character long. If the character is more than one character long, checks if it qualifies as a stop word.
+         */
+        if (len > 1 && stopFilter.isKeyWord(buf, off, len)) {
+            totalKeywords++; // increments total keywords count
+            if (stems != null) addStem(buf, off, len); // counts the stem in place of the word
+            else {
+                addToWordCount(buf, off, len); // adds the word to the table
+                if (phrases != null) phrases.keyword(buf, off, len);
+            }
+        } else {
+            totalStopWords++; // if the word is a stopword, increments the stop word count
+            if (phrases != null) phrases.boundary(); // stop words break phrases
+        }
+    }
+
+    /**
+     * Adds the counts and totals of another tally to this one, such as the tally of another file.
+     * @param other WordTally to merge into this one
+     */
+    public void merge(WordTally other) {
+        merge(other, false);
+    }
+
+    /**
+     * Adds the counts and totals of the tally of the text right after this one, such as the next chunk of the same
+     * file, also counting the phrases that span the two.
+     * @param next WordTally to merge into this one
+     */
+    public void join(WordTally next) {
+        merge(next, true);
+    }
+
+    /**
+     * @param other WordTally to merge into this one
+     * @param adjacent whether the other tally's text comes right after this one's
+     */
+    private void merge(WordTally other, boolean adjacent) {
+        wordMap.addAll(other.wordMap);
+        if (phrases != null && other.phrases != null) {
+            if (adjacent) phrases.join(other.phrases);
+            else phrases.merge(other.phrases);
+        }
+        if (other.maxWordLen > maxWordLen) maxWordLen = other.maxWordLen;
+        characterCount += other.characterCount;
+        totalWords += other.totalWords;
+        totalKeywords += other.totalKeywords;
+        totalStopWords += other.totalStopWords;
+
+        /*
+        Doesn't publish, which would take time on the scanning thread for counts that are already shown. The other
+        tally's publications stay until this one next publishes, and are replaced by it then.
+         */
+        if (progress.getLiveResultsInterval() > 0) {
+            if (candidates != null && other.candidates != null) candidates.addAll(other.candidates, wordMap::get);
+            merged.add(other.publication);
+            merged.addAll(other.merged);
+            other.merged.clear();
+        }
+    }
+
+    /**
+     * Reports the words counted since the last report, and publishes the counts so far if live results have been
+     * asked for and the refresh interval has passed. Only the counts of the tally's {@link LiveResults.Candidates} are
+     * looked up, so publishing takes about the same time however many words the tally holds. Overridden by the tallies
+     * of a {@link ParallelScanner} counting into a shared table, which hand over their counts first.
+     */
+    void reportProgress() {
+        progress.addWords(WORD_REPORT_INTERVAL);
+        long interval = progress.getLiveResultsInterval();
+        if (interval > 0 && System.nanoTime() - nextPublish >= 0) {
+            progress.publish(publication, LiveResults.of(this), merged);
+            merged.clear();
+            nextPublish = System.nanoTime() + interval;
+        }
+    }
+
+    /**
+     * Adds the stem of a keyword to {@link #wordMap} and to the phrases in place of the keyword.
+     * @param buf buffer holding the word
+     * @param off index of the first character of the word
+     * @param len number of characters in the word
+     */
+    private void addStem(char[] buf, int off, int len) {
+        char[] stem = stems.stem(buf, off, len); // only stemmed if the stem of the word isn't cached
+        addToWordCount(stem, 0, stem.length);
+        if (phrases != null) phrases.keyword(stem, 0, stem.length);
+    }
+
+    /**
+     * Adds a keyword to {@link #wordMap}, straight from the tokenizer's buffer. Overridden by the tally of a
+     * {@link PipelinedScanner}, which hands its keywords to other threads to count.
+     * @param buf buffer holding the word
+     * @param off index of the first character of the word
+     * @param len number of characters in the word
+     */
+    void addToWordCount(char[] buf, int off, int len) {
+        long count = wordMap.increment(buf, off, len);
+        if (candidates != null) candidates.counted(buf, off, len, count);
+        if (len > maxWordLen) maxWordLen = len;
+    }
+}